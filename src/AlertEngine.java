@@ -0,0 +1,224 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Checks {@link AlertRule}s whenever an item is refreshed and sends the alerts that fire to every {@link AlertSink}.
+ * <p>
+ * The conditions of every rule are indexed by item and field, sorted by threshold. When a field changes from one value to another, the
+ * only conditions that can change are those with a threshold (or the value that resets them) between the two values, so only those are
+ * looked at. Most refreshes move prices a little or not at all, which makes checking tens of thousands of rules about as cheap as checking
+ * a handful.
+ */
+public class AlertEngine implements ItemUpdateListener {
+    /**
+     * An alert that fired
+     *
+     * @param rule The rule that fired
+     * @param item The item as it was when the rule fired
+     * @param time When the rule fired, in epoch milliseconds
+     */
+    public record Alert(AlertRule rule, Item item, long time) {}
+
+    /**
+     * The state of a rule. It has fired once all its conditions are true, and cannot fire again until one of them is false.
+     */
+    private static final class RuleState {
+        final AlertRule rule;
+        int satisfied;
+        boolean fired;
+
+        RuleState(AlertRule rule) {
+            this.rule = rule;
+        }
+    }
+
+    private static final class ConditionState {
+        final AlertRule.Condition condition;
+        final RuleState rule;
+        boolean satisfied;
+
+        ConditionState(AlertRule.Condition condition, RuleState rule) {
+            this.condition = condition;
+            this.rule = rule;
+        }
+
+        /**
+         * Moves the condition to a new value of its field. It becomes true past its threshold and false past its reset value, and keeps
+         * its state in between.
+         *
+         * @return Whether the condition changed
+         */
+        boolean update(double value) {
+            boolean next = satisfied;
+            if (condition.below()) {
+                if (value < condition.threshold()) next = true;
+                else if (value >= condition.getReset()) next = false;
+            } else {
+                if (value > condition.threshold()) next = true;
+                else if (value <= condition.getReset()) next = false;
+            }
+            if (next == satisfied) return false;
+            satisfied = next;
+            return true;
+        }
+    }
+
+    /**
+     * Every condition on one field of one item
+     */
+    private static final class FieldIndex {
+        final ToDoubleFunction<Item> field;
+        final TreeMap<Double, List<ConditionState>> byThreshold = new TreeMap<>();
+        final TreeMap<Double, List<ConditionState>> byReset = new TreeMap<>();
+        final List<ConditionState> all = new ArrayList<>();
+        //the value the conditions were last updated with. NaN before the first update
+        double last = Double.NaN;
+
+        FieldIndex(ToDoubleFunction<Item> field) {
+            this.field = field;
+        }
+
+        void add(ConditionState state) {
+            byThreshold.computeIfAbsent(state.condition.threshold(), k -> new ArrayList<>()).add(state);
+            byReset.computeIfAbsent(state.condition.getReset(), k -> new ArrayList<>()).add(state);
+            all.add(state);
+        }
+    }
+
+    //item key -> field -> its conditions
+    private final HashMap<String, HashMap<String, FieldIndex>> index = new HashMap<>();
+    private final List<AlertSink> sinks = new CopyOnWriteArrayList<>();
+    private final ExecutorService delivery = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Alert delivery");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int ruleCount;
+
+    public AlertEngine(List<AlertRule> rules) {
+        for (AlertRule rule : rules) {
+            addRule(rule);
+        }
+    }
+
+    public synchronized void addRule(AlertRule rule) {
+        RuleState state = new RuleState(rule);
+        HashMap<String, FieldIndex> fields = index.computeIfAbsent(rule.getItemKey(), k -> new HashMap<>());
+        for (AlertRule.Condition condition : rule.getConditions()) {
+            fields.computeIfAbsent(condition.field(), k -> new FieldIndex(ScoringRule.VARIABLES.get(k))).add(new ConditionState(condition, state));
+        }
+        ruleCount++;
+    }
+
+    public synchronized int getRuleCount() {
+        return ruleCount;
+    }
+
+    public void addSink(AlertSink sink) {
+        sinks.add(sink);
+    }
+
+    public void removeSink(AlertSink sink) {
+        sinks.remove(sink);
+    }
+
+    @Override
+    public void itemUpdated(Item item) {
+        List<Alert> alerts = check(item);
+        for (Alert alert : alerts) {
+            //sinks can be slow, like a webhook, so they never hold up a refresh
+            delivery.execute(() -> {
+                for (AlertSink sink : sinks) {
+                    try {
+                        sink.alert(alert);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Updates the rules on a refreshed item
+     *
+     * @param item The item
+     * @return The alerts that fired
+     */
+    public synchronized List<Alert> check(Item item) {
+        HashMap<String, FieldIndex> fields = index.get(item.getKey());
+        if (fields == null) return List.of();
+        Set<RuleState> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (FieldIndex field : fields.values()) {
+            double value = field.field.applyAsDouble(item);
+            //a missing value leaves the conditions as they were
+            if (Double.isNaN(value) || value == field.last) continue;
+            if (Double.isNaN(field.last)) {
+                update(field.all, value, changed);
+            } else {
+                double low = Math.min(field.last, value);
+                double high = Math.max(field.last, value);
+                for (List<ConditionState> states : between(field.byThreshold, low, high)) update(states, value, changed);
+                for (List<ConditionState> states : between(field.byReset, low, high)) update(states, value, changed);
+            }
+            field.last = value;
+        }
+        List<Alert> alerts = new ArrayList<>();
+        for (RuleState rule : changed) {
+            boolean all = rule.satisfied == rule.rule.getConditions().size();
+            if (all && !rule.fired) {
+                alerts.add(new Alert(rule.rule, item, System.currentTimeMillis()));
+            }
+            rule.fired = all;
+        }
+        return alerts;
+    }
+
+    private static Iterable<List<ConditionState>> between(TreeMap<Double, List<ConditionState>> map, double low, double high) {
+        return map.subMap(low, true, high, true).values();
+    }
+
+    private static void update(List<ConditionState> states, double value, Set<RuleState> changed) {
+        for (ConditionState state : states) {
+            if (state.update(value)) {
+                state.rule.satisfied += state.satisfied ? 1 : -1;
+                changed.add(state.rule);
+            }
+        }
+    }
+
+    /**
+     * Stops delivering alerts and closes every sink
+     */
+    public void shutdown() {
+        delivery.shutdownNow();
+        for (AlertSink sink : sinks) {
+            sink.close();
+        }
+    }
+}
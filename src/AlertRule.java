@@ -0,0 +1,179 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A price alert on one item, such as <code>Mesa Prime Set: sellPrice &lt; 200</code> or
+ * <code>Arcane Energize@ps4: profit &gt; 10 &amp;&amp; orderCount &gt; 50</code>. The alert fires when every condition becomes true, and
+ * can only fire again once a condition has gone back past its threshold by a margin, so a price wobbling around the threshold does not
+ * repeat the alert.
+ * <p>
+ * The fields are those of {@link ScoringRule#VARIABLES}. The platform is PC unless given after an <code>@</code>.
+ * <p>
+ * The rules file can also list webhooks to post alerts to, such as <code>webhook: http://127.0.0.1:8080/alerts</code>. Those lines are
+ * read by {@link WebhookAlertSink#load(File)}.
+ */
+public class AlertRule {
+    /**
+     * How far past its threshold a value has to go back before the condition can fire again, as a fraction of the threshold. At least 1.
+     */
+    public static final double HYSTERESIS = 0.05;
+
+    /**
+     * One threshold of a rule
+     *
+     * @param field     The name of the field
+     * @param below     Whether the condition is true below the threshold rather than above it
+     * @param threshold The threshold
+     */
+    public record Condition(String field, boolean below, double threshold) {
+        /**
+         * @return The value the field has to go back past before the condition is false again
+         */
+        public double getReset() {
+            double margin = Math.max(1, Math.abs(threshold) * HYSTERESIS);
+            return below ? threshold + margin : threshold - margin;
+        }
+
+        @Override
+        public String toString() {
+            return field + (below ? " < " : " > ") + threshold;
+        }
+    }
+
+    private final String itemName;
+    private final Platform platform;
+    private final List<Condition> conditions;
+    private final String text;
+
+    /**
+     * Constructor
+     * @param itemName   The name of the item
+     * @param platform   The platform whose market to watch
+     * @param conditions The conditions, all of which have to be true for the alert to fire
+     */
+    public AlertRule(String itemName, Platform platform, List<Condition> conditions) {
+        if (conditions.isEmpty()) {
+            throw new IllegalArgumentException("An alert needs at least one condition");
+        }
+        for (Condition condition : conditions) {
+            if (!ScoringRule.VARIABLES.containsKey(condition.field)) {
+                throw new IllegalArgumentException("Unknown field " + condition.field);
+            }
+        }
+        this.itemName = itemName;
+        this.platform = platform;
+        this.conditions = List.copyOf(conditions);
+        this.text = itemName + (platform == Platform.PC ? "" : "@" + platform.id) + ": "
+                + String.join(" && ", this.conditions.stream().map(Condition::toString).toList());
+    }
+
+    /**
+     * Reads a rule written as <code>item[@platform]: field &lt; number &amp;&amp; field &gt; number ...</code>
+     *
+     * @param line The rule
+     * @return The rule
+     * @throws IllegalArgumentException if the rule is not valid
+     */
+    public static AlertRule parse(String line) {
+        int colon = line.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected item: conditions");
+        }
+        String item = line.substring(0, colon).trim();
+        Platform platform = Platform.PC;
+        int at = item.lastIndexOf('@');
+        if (at > 0) {
+            platform = Platform.fromId(item.substring(at + 1).trim());
+            item = item.substring(0, at).trim();
+        }
+        List<Condition> conditions = new ArrayList<>();
+        for (String part : line.substring(colon + 1).split("&&")) {
+            part = part.trim();
+            int op = part.indexOf('<') >= 0 ? part.indexOf('<') : part.indexOf('>');
+            if (op <= 0) {
+                throw new IllegalArgumentException("Expected field < number or field > number in " + part);
+            }
+            try {
+                conditions.add(new Condition(part.substring(0, op).trim(), part.charAt(op) == '<',
+                        Double.parseDouble(part.substring(op + 1).trim())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number in " + part);
+            }
+        }
+        return new AlertRule(item, platform, conditions);
+    }
+
+    /**
+     * Reads rules from a file with one rule per line. Blank lines and lines starting with <code>#</code> are ignored, and rules that are not
+     * valid are reported and left out.
+     *
+     * @param file The file. If it does not exist there are no rules.
+     * @return The rules in the file
+     */
+    public static List<AlertRule> load(File file) {
+        List<AlertRule> rules = new ArrayList<>();
+        if (!file.exists()) return rules;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith(WebhookAlertSink.PREFIX)) continue;
+                try {
+                    rules.add(parse(line));
+                } catch (IllegalArgumentException e) {
+                    System.err.println(file + ":" + number + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return rules;
+    }
+
+    public String getItemName() {
+        return itemName;
+    }
+
+    public Platform getPlatform() {
+        return platform;
+    }
+
+    /**
+     * @return The key of the item this rule watches
+     * @see Item#getKey()
+     */
+    public String getItemKey() {
+        return MarketAPI.cacheKey(itemName, platform);
+    }
+
+    public List<Condition> getConditions() {
+        return conditions;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Somewhere alerts are delivered to. Alerts are delivered on a background thread, one at a time.
+ */
+public interface AlertSink {
+    void alert(AlertEngine.Alert alert) throws Exception;
+
+    /**
+     * Releases anything the sink holds, such as a tray icon. Called once when alerts stop, after the last alert.
+     */
+    default void close() {
+    }
+
+    /**
+     * Describes an alert in one line, for sinks that show text
+     */
+    static String describe(AlertEngine.Alert alert) {
+        Item item = alert.item();
+        return alert.rule() + " (buy " + Utils.notNull(item.buyPrice, 0) + ", sell " + Utils.notNull(item.sellPrice, 0) + ", profit "
+                + Utils.notNull(item.profit, 0) + ")";
+    }
+}
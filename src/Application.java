@@ -14,25 +14,87 @@
  * limitations under the License.
  */
 
+import javax.swing.*;
+import java.awt.AWTException;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class Application {
     private final DelayedThreadQueue allItems;
     private final DelayedThreadQueue searchedItems;
-    private RunOnceAfterDelayThread loadSearchedItems;
+    private final Debouncer searchDebouncer = new Debouncer("Search", 150);
+    private final Debouncer loadSearchedItems = new Debouncer("Load searched items", 1000);
+    //incremented for every search so a search that finishes after a newer one was started is never shown
+    private int searchGeneration = 0;
     private ApplicationWindow window;
     private boolean initialized = false;
+    private final List<Platform> platforms;
+    private final List<ItemUpdateListener> itemListeners = new CopyOnWriteArrayList<>();
+    private final EnumMap<OpportunityRanking.Metric, OpportunityRanking> opportunities = new EnumMap<>(OpportunityRanking.Metric.class);
+    private final SetArbitrage setArbitrage = new SetArbitrage();
+    private final SellerIndex sellerIndex = new SellerIndex();
+    private final DucatPlanner ducatPlanner = new DucatPlanner(sellerIndex);
+    private static final File alertsFile = new File("src\\alerts.txt");
+    private final AlertEngine alertEngine = new AlertEngine(AlertRule.load(alertsFile));
+    private RelicValues relicValues;
+    //the table row of every item, by key. Also guards changes to the rows, which are made from several threads
+    private final HashMap<String, Integer> rowIndex = new HashMap<>();
+    /**
+     * How often the catalogue is checked for added, removed and renamed items
+     */
+    public static final long CATALOGUE_SYNC_HOURS = 6;
+    private final ScheduledExecutorService catalogueSync = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Catalogue sync");
+        thread.setDaemon(true);
+        return thread;
+    });
     private static final File storageFile = new File("src\\items.bin");
+    private final Checkpointer checkpointer = new Checkpointer(storageFile, 30);
+    private final ScoringRules scoringRules = ScoringRules.load(new File("src\\rules.txt"));
+    private final RefreshPipeline pipeline;
     public Application() {
+        this(List.of(Platform.PC));
+    }
+
+    /**
+     * Creates an application that scans the markets of several platforms at once
+     * @param platforms The platforms to scan
+     */
+    public Application(List<Platform> platforms) {
+        this.platforms = List.copyOf(platforms);
+        for (OpportunityRanking.Metric metric : OpportunityRanking.Metric.values()) {
+            OpportunityRanking ranking = new OpportunityRanking(metric, 50);
+            opportunities.put(metric, ranking);
+            addItemListener(ranking);
+        }
+        addItemListener(scoringRules);
+        addItemListener(setArbitrage);
+        addItemListener(sellerIndex);
+        addItemListener(alertEngine);
+        alertEngine.addSink(new LogAlertSink());
+        for (WebhookAlertSink webhook : WebhookAlertSink.load(alertsFile)) {
+            alertEngine.addSink(webhook);
+        }
+        addItemListener(checkpointer);
         allItems = new DelayedThreadQueue(0, this);
         searchedItems = new DelayedThreadQueue(0, this);
+        //its threads start right away, so it is made once everything it reaches through this application exists
+        pipeline = new RefreshPipeline(this);
         init();
     }
 
@@ -42,7 +104,26 @@ public class Application {
     public void init() {
         if (initialized) return;
         MarketAPI.loadItems();
-        window = new ApplicationWindow(1280, 720);
+        MetadataCache.load();
+        checkpointer.addSaveHook(MetadataCache::saveIfDirty);
+        //the report goes to the console, so it is only printed when asked for, every this many seconds
+        Long metricsInterval = Long.getLong("warframe.metricsInterval");
+        if (metricsInterval != null) {
+            Metrics.startReporting(metricsInterval);
+        }
+        window = new ApplicationWindow(1280, 720, scoringRules.getColumnNames());
+        MemoryBudget.track("orderBooks", () -> estimateRowSize(item -> item.orderBook == null ? 0 : item.orderBook.estimateSize()));
+        MemoryBudget.track("sketches", () -> estimateRowSize(item -> (item.buySketch == null ? 0 : item.buySketch.estimateSize())
+                + (item.sellSketch == null ? 0 : item.sellSketch.estimateSize())));
+        relicValues = new RelicValues(window.getRelicTableModel());
+        if (alertEngine.getRuleCount() > 0) {
+            try {
+                alertEngine.addSink(new TrayAlertSink());
+            } catch (AWTException e) {
+                System.err.println("Alerts will only be logged: " + e.getMessage());
+            }
+        }
+        addItemListener(relicValues);
         window.addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosed(WindowEvent e) {
@@ -50,27 +131,27 @@ public class Application {
             }
         });
         System.out.println(Utils.listToString(window.getTableModel().getDataVector()));
-        loadSearchedItems = new RunOnceAfterDelayThread(1000, () -> {
-            final List<Item> dataVector = window.getTableModel().getDataVector();
-            for (Item entry : dataVector) {
-                if(window.getTableModel().filter(entry)){
-                    searchedItems.pushTask(entry);
-                }
-            }
-        });
+        addItemListener(window.getItemSearch());
         window.searchBar.addKeyListener(new KeyAdapter() {
             @Override
             public void keyReleased(KeyEvent e) {
-                window.getTableModel().setSearchText(window.searchBar.getText());
-                window.getTableModel().fireTableDataChanged();
-                if (window.searchBar.getText().isBlank()) {
+                String text = window.searchBar.getText();
+                if (!text.equals(window.getTableModel().getSearchText())) {
+                    search(text);
+                }
+                if (text.isBlank()) {
+                    loadSearchedItems.cancel();
                     searchedItems.purgeQueue();
                     searchedItems.setPaused(true);
                     allItems.setPaused(false);
                 } else {
                     if (e.getKeyCode() == KeyEvent.VK_ENTER) {
                         searchedItems.purgeQueue();
-                        loadSearchedItems.trigger();
+                        loadSearchedItems.trigger(() -> {
+                            for (Item entry : window.getItemSearch().getVisibleItems()) {
+                                searchedItems.pushTask(entry);
+                            }
+                        });
                         searchedItems.setPaused(false);
                         allItems.setPaused(true);
                     }
@@ -78,25 +159,101 @@ public class Application {
             }
         });
 
+        window.ducatPlatform.setModel(new DefaultComboBoxModel<>(platforms.toArray(new Platform[0])));
+        window.planDucats.addActionListener(e -> planDucats());
+        window.findSellers.addActionListener(e -> findSellers());
+
         window.styleComponents(ApplicationWindow.STYLE_DARK);
         initialized = true;
     }
 
-    private void shutdown() {
-        try {
-            if (!storageFile.exists()) {
-                storageFile.getParentFile().mkdirs();
-                storageFile.createNewFile();
-            }
-            ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(new FileOutputStream(storageFile)));
-            oos.writeObject(window.getTableModel().getDataVector());
-            oos.flush();
-            oos.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Searches the table in the background and shows the result once it is done. Must be called on the event dispatch thread.
+     * @param text The search text
+     */
+    private void search(String text) {
+        window.getTableModel().setSearchText(text);
+        final int generation = ++searchGeneration;
+        searchDebouncer.trigger(() -> {
+            BitSet matches = window.getItemSearch().search(text);
+            if (Thread.currentThread().isInterrupted()) return;
+            SwingUtilities.invokeLater(() -> {
+                if (generation != searchGeneration) return;
+                window.getItemSearch().apply(text, matches);
+                window.tableSorter.refresh();
+            });
+        });
+    }
+
+    /**
+     * Plans the cheapest way to the ducats asked for in the ducats tab and shows it there. Must be called on the event dispatch thread.
+     */
+    private void planDucats() {
+        Platform platform = (Platform) window.ducatPlatform.getSelectedItem();
+        int target = (Integer) window.ducatTarget.getValue();
+        double tradeCost = (Double) window.ducatTradeCost.getValue();
+        int maxTrades = (Integer) window.ducatMaxTrades.getValue();
+        DucatPlanner.Plan plan = ducatPlanner.plan(platform, target, tradeCost, maxTrades, window.ducatOnlineOnly.isSelected());
+        StringBuilder text = new StringBuilder();
+        if (plan.trades().isEmpty()) {
+            text.append("No prime parts are for sale yet. Their orders are read as the items are refreshed.");
+        } else {
+            text.append(String.format("%d ducats for %d platinum (%.2f ducats/plat) in %d trades%n", plan.ducats(), plan.platinum(),
+                    plan.getDucatsPerPlat(), plan.trades().size()));
+            if (plan.ducats() < target) {
+                text.append("Not enough parts are for sale to reach ").append(target).append(" ducats in ").append(maxTrades)
+                        .append(" trades\n");
+            }
+            for (DucatPlanner.Trade trade : plan.trades()) {
+                text.append(String.format("%n%s%s: %d ducats for %dp%n", trade.seller().name, trade.seller().online ? "" : " (offline)",
+                        trade.ducats(), trade.platinum()));
+                for (DucatPlanner.Purchase purchase : trade.purchases()) {
+                    text.append(String.format("    %d x %s at %dp%n", purchase.quantity(), purchase.item().name, purchase.price()));
+                }
+            }
+        }
+        window.ducatPlan.setText(text.toString());
+        window.ducatPlan.setCaretPosition(0);
+    }
+
+    /**
+     * Finds sellers with several of the items the search shows, using the options in the sellers tab, and shows them there. Must be called
+     * on the event dispatch thread.
+     */
+    private void findSellers() {
+        double discount = (Integer) window.sellerDiscount.getValue() / 100d;
+        int minItems = (Integer) window.sellerMinItems.getValue();
+        List<SellerIndex.Match> matches = sellerIndex.findSellers(window.getItemSearch().getVisibleItems(), discount, minItems,
+                window.sellerOnlineOnly.isSelected());
+        StringBuilder text = new StringBuilder();
+        if (matches.isEmpty()) {
+            text.append("No seller has enough of the searched items under their usual prices. Search for the items you want first.");
+        }
+        for (SellerIndex.Match match : matches) {
+            text.append(String.format("%s%s: %d items, %.0fp under their usual prices%n", match.seller().name,
+                    match.seller().online ? "" : " (offline)", match.listings().size(), match.discount()));
+            for (SellerIndex.Listing listing : match.listings()) {
+                text.append(String.format("    %s %s at %dp, %d for sale%n", listing.item().name, listing.item().getPlatform(),
+                        listing.price(), listing.quantity()));
+            }
+            text.append(String.format("%n"));
         }
+        window.sellerMatches.setText(text.toString());
+        window.sellerMatches.setCaretPosition(0);
+    }
+
+    private void shutdown() {
+        searchDebouncer.shutdown();
+        window.tableSorter.shutdown();
+        loadSearchedItems.shutdown();
+        alertEngine.shutdown();
+        Metrics.stopReporting();
         allItems.terminate();
         searchedItems.terminate();
+        pipeline.shutdown();
+        catalogueSync.shutdownNow();
+        //the final save happens on the checkpointer's thread so closing the window does not wait for it
+        checkpointer.close();
     }
 
     /**
@@ -112,45 +269,286 @@ public class Application {
      * Gathers a list of items from the API and files and begins queuing them for updates
      */
     public void gatherInfo() {
-        for (int i = 0; i < MarketAPI.itemNames.size(); i++) {
-            String name = MarketAPI.itemNames.get(i);
-            Item temp = new Item(name, i);
-            allItems.pushTask(name, i);
-            window.getTableModel().addRow(temp);
-        }
+        HashMap<String, Item> restored = new HashMap<>();
         try {
             if (storageFile.exists()) {
                 ObjectInputStream oos = new ObjectInputStream(new GZIPInputStream(new FileInputStream(storageFile)));
                 List<Item> o = (List<Item>) oos.readObject();
-                o.sort((a,b)->{
-                    return a.name.compareTo(b.name);
-                });
-                for(int i = 0; i < o.size(); i++){
-                    o.get(i).location = i;
+                for (Item item : o) {
+                    restored.put(item.getKey(), item);
                 }
-                window.getTableModel().setDataVector(o);
                 oos.close();
-
             }
-            /*
-            ArrayDeque<Item> queue = allItems.getQueue();
-            int size = queue.size();
-            for(int i = 0; i < size; i++){
-                Item item = queue.();
-                System.out.println(item.name);
-                //sets the initialized items to be updated last. Useful for first-time setup of items
-                if(item.relics != null){
-                    System.out.println(item.name + " was initialized");
-                    queue.removeLast();
-                    queue.addFirst(item);
-                }
-            }*/
-            //todo make this work
         } catch (Exception e) {
             e.printStackTrace();
         }
+        //every item gets one row per platform, reusing the saved data for that platform if there is any
+        List<Item> rows = new ArrayList<>();
+        for (String name : MarketAPI.itemNames) {
+            for (Platform platform : platforms) {
+                Item item = restored.get(MarketAPI.cacheKey(name, platform));
+                if (item == null) {
+                    item = new Item(name, null, platform, rows.size());
+                }
+                item.location = rows.size();
+                synchronized (rowIndex) {
+                    rowIndex.put(item.getKey(), item.location);
+                }
+                rows.add(item);
+            }
+        }
+        scoringRules.scoreAll(rows);
+        window.getTableModel().setDataVector(rows);
+        window.getItemSearch().setRows(rows);
+        checkpointer.seed(rows);
+        checkpointer.start();
+        //queue the items with no data or the oldest data first so the table is useful after as few requests as possible
+        List<Item> queue = new ArrayList<>(rows);
+        queue.sort(Item.STALEST_FIRST);
+        for (Item item : queue) {
+            allItems.pushTask(item);
+        }
         allItems.start();
         searchedItems.start();
+        //a catalogue read from the API on start up is already current
+        long firstSync = MarketAPI.isCatalogueSynced() ? CATALOGUE_SYNC_HOURS : 0;
+        catalogueSync.scheduleWithFixedDelay(this::syncCatalogue, firstSync, CATALOGUE_SYNC_HOURS, TimeUnit.HOURS);
+    }
+
+    private void syncCatalogue() {
+        try {
+            Catalogue.Changes changes = MarketAPI.syncCatalogue();
+            if (!changes.isEmpty()) {
+                System.out.println("Catalogue changed: " + changes);
+                SwingUtilities.invokeLater(() -> applyCatalogueChanges(changes));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        recomputeStatistics();
+    }
+
+    /**
+     * Works out the averages, trend and spread of every row again in one batch, from the statistics in the cache, and publishes the rows
+     * that have any. Rows whose statistics are not cached keep what they have until they are refreshed.
+     */
+    private void recomputeStatistics() {
+        List<Item> snapshot;
+        synchronized (rowIndex) {
+            snapshot = new ArrayList<>(rowIndex.size());
+            for (int location : rowIndex.values()) {
+                snapshot.add(window.getTableModel().getDataVector().get(location));
+            }
+        }
+        List<Item> rows = new ArrayList<>();
+        List<double[]> days = new ArrayList<>();
+        List<double[]> hours = new ArrayList<>();
+        for (Item row : snapshot) {
+            if (!row.initialized) continue;
+            Map<String, ArrayList<Double>> cached = MarketAPI.getCachedStatistics(row.name, row.getPlatform(), 0);
+            if (cached == null) continue;
+            rows.add(row);
+            days.add(Statistics.toArray(DelayedThreadQueue.getPrices(cached, "90days", row.name, row.getPlatform(), 0)));
+            hours.add(Statistics.toArray(DelayedThreadQueue.getPrices(cached, "48hours", row.name, row.getPlatform(), 0)));
+        }
+        if (rows.isEmpty()) return;
+        double[][] daySeries = days.toArray(new double[0][]);
+        double[] avg90d = Statistics.means(daySeries);
+        double[] avg48h = Statistics.means(hours.toArray(new double[0][]));
+        double[] slopes = Statistics.slopes(daySeries);
+        double[] deviations = Statistics.standardDeviations(daySeries);
+        for (int i = 0; i < rows.size(); i++) {
+            Item row = rows.get(i);
+            row.avg90d = DelayedThreadQueue.roundPrice(avg90d[i]);
+            row.avg48h = DelayedThreadQueue.roundPrice(avg48h[i]);
+            row.trendName = DelayedThreadQueue.getTrendName((int) Math.signum(slopes[i]));
+            row.deviation90d = daySeries[i].length == 0 ? null : deviations[i];
+        }
+        publish(rows);
+    }
+
+    /**
+     * Brings the rows up to date with the catalogue. Added items get new rows at the end of the table, removed items have their rows
+     * hidden, and renamed items keep their rows and market data under the new name, so no other row moves. Must be called on the event
+     * dispatch thread.
+     * @param changes What changed in the catalogue
+     */
+    private void applyCatalogueChanges(Catalogue.Changes changes) {
+        SearchableTableModel<Item> model = window.getTableModel();
+        List<Item> added = new ArrayList<>();
+        List<Item> renamed = new ArrayList<>();
+        List<String> removedKeys = new ArrayList<>();
+        synchronized (rowIndex) {
+            for (Catalogue.Rename rename : changes.renamed()) {
+                for (Platform platform : platforms) {
+                    Integer location = rowIndex.remove(MarketAPI.cacheKey(rename.from().name(), platform));
+                    if (location == null) continue;
+                    Item old = model.getDataVector().get(location);
+                    removedKeys.add(old.getKey());
+                    //a copy, since pipeline threads may be reading the old row. One of them publishing it now finds its key gone
+                    Item row = old.renamed(rename.to().name(), rename.to().url());
+                    model.getDataVector().set(location, row);
+                    rowIndex.put(row.getKey(), location);
+                    allItems.replace(old, row);
+                    searchedItems.replace(old, row);
+                    renamed.add(row);
+                    model.fireTableRowsUpdated(location, location);
+                }
+            }
+            for (Catalogue.Entry entry : changes.removed()) {
+                for (Platform platform : platforms) {
+                    String key = MarketAPI.cacheKey(entry.name(), platform);
+                    Integer location = rowIndex.remove(key);
+                    if (location == null) continue;
+                    removedKeys.add(key);
+                    window.getItemSearch().hide(location);
+                }
+            }
+            for (Catalogue.Entry entry : changes.added()) {
+                for (Platform platform : platforms) {
+                    Item item = new Item(entry.name(), null, platform, model.getRowCount());
+                    rowIndex.put(item.getKey(), item.location);
+                    model.addRow(item);
+                    added.add(item);
+                }
+            }
+        }
+        //everything kept under an old key is dropped, and renamed rows are kept again under their new keys
+        for (ItemUpdateListener listener : itemListeners) {
+            for (String key : removedKeys) {
+                listener.itemRemoved(key);
+            }
+            if (!renamed.isEmpty()) listener.itemsUpdated(renamed);
+        }
+        window.getItemSearch().addRows(added);
+        checkpointer.seed(added);
+        scoringRules.scoreAll(added);
+        //new items have no data yet, so they are refreshed next
+        for (Item item : added) {
+            allItems.addTask(item);
+        }
+        window.tableSorter.refresh();
+    }
+
+    /**
+     * Shows a refreshed item in the table and notifies every {@link ItemUpdateListener}
+     * @param item The refreshed item
+     */
+    public void publish(Item item) {
+        publish(List.of(item));
+    }
+
+    /**
+     * Shows a batch of items that were refreshed together in the table, then notifies every {@link ItemUpdateListener} of the whole batch
+     * @param items The refreshed items
+     */
+    public void publish(List<Item> items) {
+        List<Item> listed = new ArrayList<>(items.size());
+        synchronized (rowIndex) {
+            for (Item item : items) {
+                //an item removed or renamed while it was being refreshed no longer has this row
+                Integer location = rowIndex.get(item.getKey());
+                if (location == null || location != item.location) continue;
+                window.getTableModel().getDataVector().set(item.location, item);
+                listed.add(item);
+            }
+        }
+        if (listed.isEmpty()) return;
+        //listeners go first so the table is redrawn with the items' new scores
+        for (ItemUpdateListener listener : itemListeners) {
+            listener.itemsUpdated(listed);
+        }
+        SwingUtilities.invokeLater(() -> {
+            for (Item item : listed) {
+                window.getTableModel().fireTableRowsUpdated(item.location, item.location);
+            }
+        });
+    }
+
+    /**
+     * Adds up an estimate over every row, for the market data kept in the rows that no cache accounts for
+     * @param size Estimates the bytes held by one row
+     * @return The total
+     */
+    private long estimateRowSize(ToLongFunction<Item> size) {
+        long total = 0;
+        synchronized (rowIndex) {
+            for (Item item : window.getTableModel().getDataVector()) {
+                total += size.applyAsLong(item);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Gets the item currently shown in the table for a key
+     * @param key The key of the item
+     * @return The item, or null if it has no row
+     * @see Item#getKey()
+     */
+    public Item getRow(String key) {
+        synchronized (rowIndex) {
+            Integer location = rowIndex.get(key);
+            return location == null ? null : window.getTableModel().getDataVector().get(location);
+        }
+    }
+
+    /**
+     * Gets the item currently in a row, if the row still belongs to an item in the catalogue
+     * @param location The location of the row
+     * @return The item, or null if its item was removed from the catalogue
+     */
+    public Item getListedRow(int location) {
+        synchronized (rowIndex) {
+            Item row = window.getTableModel().getDataVector().get(location);
+            Integer listed = rowIndex.get(row.getKey());
+            return listed != null && listed == location ? row : null;
+        }
+    }
+
+    public RefreshPipeline getPipeline() {
+        return pipeline;
+    }
+
+    public AlertEngine getAlertEngine() {
+        return alertEngine;
+    }
+
+    public SellerIndex getSellerIndex() {
+        return sellerIndex;
+    }
+
+    public DucatPlanner getDucatPlanner() {
+        return ducatPlanner;
+    }
+
+    public ScoringRules getScoringRules() {
+        return scoringRules;
+    }
+
+    public SetArbitrage getSetArbitrage() {
+        return setArbitrage;
+    }
+
+    public RelicValues getRelicValues() {
+        return relicValues;
+    }
+
+    public void addItemListener(ItemUpdateListener listener) {
+        itemListeners.add(listener);
+    }
+
+    public void removeItemListener(ItemUpdateListener listener) {
+        itemListeners.remove(listener);
+    }
+
+    /**
+     * Gets the live ranking of the best items by a metric
+     * @param metric The metric to rank by
+     * @return The ranking
+     */
+    public OpportunityRanking getOpportunities(OpportunityRanking.Metric metric) {
+        return opportunities.get(metric);
     }
 
     public ApplicationWindow getWindow() {
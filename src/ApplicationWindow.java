@@ -17,7 +17,6 @@
 import javax.swing.*;
 import javax.swing.table.TableRowSorter;
 import java.awt.*;
-import java.util.Arrays;
 import java.util.HashMap;
 
 public class ApplicationWindow extends JFrame {
@@ -58,13 +57,32 @@ public class ApplicationWindow extends JFrame {
     }
 
     public JTextField searchBar;
-    public TableRowSorter<SearchableTableModel<Item>> tableSorter;
+    public SnapshotRowSorter<Item> tableSorter;
     GridBagLayout gbl;
     GridBagConstraints gbc;
     private JPanel mainPanel;
     //TODO Rename this to something actually memorable
     private JTable table;
     private SearchableTableModel<Item> tableModel;
+    private final ItemSearch itemSearch = new ItemSearch();
+    public TableRowSorter<SearchableTableModel<RelicValue>> relicTableSorter;
+    private JTable relicTable;
+    private SearchableTableModel<RelicValue> relicTableModel;
+    private JTabbedPane tabs;
+    //the ducats tab: what to plan for, and the plan
+    public JComboBox<Platform> ducatPlatform;
+    public JSpinner ducatTarget;
+    public JSpinner ducatTradeCost;
+    public JSpinner ducatMaxTrades;
+    public JCheckBox ducatOnlineOnly;
+    public JButton planDucats;
+    public JTextArea ducatPlan;
+    //the sellers tab: sellers with several of the items the search shows
+    public JSpinner sellerDiscount;
+    public JSpinner sellerMinItems;
+    public JCheckBox sellerOnlineOnly;
+    public JButton findSellers;
+    public JTextArea sellerMatches;
 
     /**
      * Creates an application window with the specified width and height
@@ -73,8 +91,19 @@ public class ApplicationWindow extends JFrame {
      * @param height
      */
     public ApplicationWindow(final int width, int height) {
+        this(width, height, new String[0]);
+    }
+
+    /**
+     * Creates an application window with the specified width and height and extra item columns for scoring rules
+     *
+     * @param width
+     * @param height
+     * @param scoreColumns The header of each scoring rule's column
+     */
+    public ApplicationWindow(final int width, int height, String[] scoreColumns) {
         init(width, height);
-        initComponents();
+        initComponents(scoreColumns);
         layoutComponents();
     }
 
@@ -92,42 +121,17 @@ public class ApplicationWindow extends JFrame {
     /**
      * Initializes all components
      */
-    private void initComponents() {
+    private void initComponents(String[] scoreColumns) {
         mainPanel = new JPanel();
         searchBar = new JTextField();
-        tableModel = new SearchableTableModel<>(new String[]{"Name", "Buy Price", "Sell Price", "Profit", "Average Price (48h)", "Average Price " +
-                "(90d)", "Trend", "Orders", "Profitable?", "Relics", "Tags", "Ducats", "Ducats/Plat"}, 0) {
-            //todo allow permissive filters rather than exclusive (i.e show things that match A & B, but also show things that match A || B)
+        //the columns of every item, then one for each scoring rule
+        String[] columns = new String[Item.COLUMN_NAMES.length + scoreColumns.length];
+        System.arraycopy(Item.COLUMN_NAMES, 0, columns, 0, Item.COLUMN_NAMES.length);
+        System.arraycopy(scoreColumns, 0, columns, Item.COLUMN_NAMES.length, scoreColumns.length);
+        tableModel = new SearchableTableModel<>(columns, 0) {
             @Override
             public boolean filter(Item item) {
-                if(getSearchText().isBlank()){
-                    return true;
-                }
-                boolean shouldShow = true;
-                String[] conditions = getSearchText().trim().split(",");
-                //["Meso N1", "!Meso N10"]
-                for(int i = 0; i < conditions.length; i++){
-                    String condition = conditions[i].trim();
-                    if(condition.isBlank())
-                        continue;
-                    boolean inverted = condition.charAt(0) == '!';
-                    String firstTrim = inverted ? condition.substring(1) : condition;
-                    boolean searchTagOnly = (firstTrim.length() > 1) && firstTrim.charAt(0) == '#';
-                    final String searchText = searchTagOnly ? firstTrim.substring(1) : firstTrim;
-                    boolean valid = false;
-                    if (!searchTagOnly && Utils.containsIgnoreCase(item.name, searchText)) {
-                        valid = true;
-                    } else if (item.tags != null && Arrays.stream(item.tags).anyMatch((s) -> s.equalsIgnoreCase(searchText))) {
-                        valid = true;
-                    } else if (!searchTagOnly && item.relics != null && Arrays.stream(item.relics).anyMatch((s) -> s.equalsIgnoreCase(searchText))) {
-                        valid = true;
-                    }
-                    if(shouldShow){
-                        shouldShow = valid != inverted;
-                   }
-                }
-
-                return shouldShow;
+                return itemSearch.isVisible(item);
             }
 
             @Override
@@ -141,11 +145,76 @@ public class ApplicationWindow extends JFrame {
             }
         };
 
-        tableSorter = new TableRowSorter<>(tableModel);
+        //filtering and sorting happen off the event dispatch thread
+        tableSorter = new SnapshotRowSorter<>(tableModel, Item::getValueAt, itemSearch::isVisible);
 
         table = new JTable(tableModel);
         table.setRowSorter(tableSorter);
-        tableSorter.setRowFilter(tableModel.filter);
+
+        relicTableModel = new SearchableTableModel<>(RelicValue.COLUMN_NAMES, 0) {
+            @Override
+            public boolean filter(RelicValue relic) {
+                return true;
+            }
+
+            @Override
+            public Class<?> getColumnClass(int columnIndex) {
+                return RelicValue.getColumnClass(columnIndex);
+            }
+
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex) {
+                return getDataVector().get(rowIndex).getValueAt(columnIndex);
+            }
+        };
+        relicTableSorter = new TableRowSorter<>(relicTableModel);
+        relicTable = new JTable(relicTableModel);
+        relicTable.setRowSorter(relicTableSorter);
+
+        ducatPlatform = new JComboBox<>(Platform.values());
+        ducatTarget = new JSpinner(new SpinnerNumberModel(1000, 1, 1_000_000, 100));
+        ducatTradeCost = new JSpinner(new SpinnerNumberModel(2.0, 0.0, 1000.0, 1.0));
+        ducatMaxTrades = new JSpinner(new SpinnerNumberModel(20, 1, 1000, 1));
+        ducatOnlineOnly = new JCheckBox("Online sellers only", true);
+        planDucats = new JButton("Plan");
+        ducatPlan = createOutput();
+        sellerDiscount = new JSpinner(new SpinnerNumberModel(10, 0, 100, 5));
+        sellerMinItems = new JSpinner(new SpinnerNumberModel(2, 1, 100, 1));
+        sellerOnlineOnly = new JCheckBox("Online sellers only", true);
+        findSellers = new JButton("Find sellers of the searched items");
+        sellerMatches = createOutput();
+
+        tabs = new JTabbedPane();
+        tabs.addTab("Items", new JScrollPane(table));
+        tabs.addTab("Relics", new JScrollPane(relicTable));
+        tabs.addTab("Ducats", createToolPanel(ducatPlan, ducatPlatform, new JLabel("Ducats"), ducatTarget, new JLabel("Plat per trade"),
+                ducatTradeCost, new JLabel("Max trades"), ducatMaxTrades, ducatOnlineOnly, planDucats));
+        tabs.addTab("Sellers", createToolPanel(sellerMatches, new JLabel("% under usual price"), sellerDiscount, new JLabel("Min items"),
+                sellerMinItems, sellerOnlineOnly, findSellers));
+    }
+
+    /**
+     * Creates a read only text area for the results of a tool
+     */
+    private static JTextArea createOutput() {
+        JTextArea output = new JTextArea();
+        output.setEditable(false);
+        output.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 13));
+        return output;
+    }
+
+    /**
+     * Lays out a tool: its controls in a row along the top and its results under them
+     */
+    private static JPanel createToolPanel(JTextArea output, JComponent... controls) {
+        JPanel bar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        for (JComponent control : controls) {
+            bar.add(control);
+        }
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(bar, BorderLayout.NORTH);
+        panel.add(new JScrollPane(output), BorderLayout.CENTER);
+        return panel;
     }
 
     private void layoutComponents() {
@@ -166,7 +235,7 @@ public class ApplicationWindow extends JFrame {
         mainPanel.add(searchBar, gbc);
         gbc.gridy++;
         gbc.fill = GridBagConstraints.BOTH;
-        mainPanel.add(new JScrollPane(table), gbc);
+        mainPanel.add(tabs, gbc);
         //mainPanel.add(table, gbc);
     }
 
@@ -190,9 +259,24 @@ public class ApplicationWindow extends JFrame {
         table.setBackground(themes.get(style).get("tableBackground"));
         table.setForeground(themes.get(style).get("tableForeground"));
         table.setGridColor(themes.get(style).get("tableBorders"));
+        relicTable.setBackground(themes.get(style).get("tableBackground"));
+        relicTable.setForeground(themes.get(style).get("tableForeground"));
+        relicTable.setGridColor(themes.get(style).get("tableBorders"));
+        ducatPlan.setBackground(themes.get(style).get("tableBackground"));
+        ducatPlan.setForeground(themes.get(style).get("tableForeground"));
+        sellerMatches.setBackground(themes.get(style).get("tableBackground"));
+        sellerMatches.setForeground(themes.get(style).get("tableForeground"));
     }
 
     public SearchableTableModel<Item> getTableModel() {
         return tableModel;
     }
+
+    public ItemSearch getItemSearch() {
+        return itemSearch;
+    }
+
+    public SearchableTableModel<RelicValue> getRelicTableModel() {
+        return relicTableModel;
+    }
 }
\ No newline at end of file
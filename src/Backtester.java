@@ -0,0 +1,248 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replays recorded market data through trading strategies to see how they would have done. The recordings are the files written by
+ * {@link MarketExporter}, so a cron job running the export builds up the history. Strategies are run in parallel on a fork-join pool
+ * using every core.
+ * <p>
+ * Fills are simulated with a delay of one snapshot: a decision made on one snapshot is filled at the prices of the next one, and a buy is
+ * skipped if the lowest sell order has moved up by more than the allowed slippage by then.
+ * <p>
+ * Usage: <code>backtest [--slippage fraction] files or directories...</code>
+ */
+public class Backtester {
+    /**
+     * The recorded market of one item at one point in time
+     */
+    public record Snapshot(String name, Platform platform, long time, Integer buyPrice, Integer sellPrice, Integer profit, Double avg48h,
+                           Double avg90d, int orderCount, String trend) {
+        static Snapshot of(JSONObject json) {
+            return new Snapshot(json.getString("name"), Platform.fromId(json.getString("platform")), json.optLong("refreshed"),
+                    optInt(json, "buyPrice"), optInt(json, "sellPrice"), optInt(json, "profit"), optDouble(json, "avg48h"),
+                    optDouble(json, "avg90d"), json.optInt("orderCount"), json.optString("trend", null));
+        }
+
+        private static Integer optInt(JSONObject json, String key) {
+            return json.isNull(key) ? null : json.optInt(key);
+        }
+
+        private static Double optDouble(JSONObject json, String key) {
+            return json.isNull(key) ? null : json.optDouble(key);
+        }
+    }
+
+    /**
+     * How a strategy did
+     *
+     * @param strategy      The description of the strategy
+     * @param trades        How many round trips were completed
+     * @param profit        The platinum made by completed trades
+     * @param hitRate       The fraction of completed trades that made money
+     * @param medianProfit  The median platinum made by a completed trade, or NaN if there were none
+     * @param deviation     The standard deviation of the platinum made by a completed trade, showing how much a strategy's results vary
+     * @param turnover      The platinum spent buying, divided by the most platinum tied up in items at once
+     * @param openPositions How many items were still held at the end of the recording
+     */
+    public record Report(String strategy, int trades, long profit, double hitRate, double medianProfit, double deviation, double turnover,
+                         int openPositions) {
+        @Override
+        public String toString() {
+            return String.format("%-48s trades %5d  P&L %7d  hit rate %5.1f%%  median %6.1f  sd %6.1f  turnover %6.2f  open %d", strategy,
+                    trades, profit, hitRate * 100, medianProfit, deviation, turnover, openPositions);
+        }
+    }
+
+    private record Trade(long bought, long sold, int paid, int received) {}
+
+    private final List<Snapshot[]> series;
+    private final double slippage;
+
+    /**
+     * Constructor
+     * @param snapshots Every recorded snapshot, in any order
+     * @param slippage  How far, as a fraction, the lowest sell order may rise between deciding to buy and buying
+     */
+    public Backtester(List<Snapshot> snapshots, double slippage) {
+        this.slippage = slippage;
+        HashMap<String, List<Snapshot>> byItem = new HashMap<>();
+        for (Snapshot snapshot : snapshots) {
+            byItem.computeIfAbsent(MarketAPI.cacheKey(snapshot.name, snapshot.platform), k -> new ArrayList<>()).add(snapshot);
+        }
+        series = new ArrayList<>(byItem.size());
+        for (List<Snapshot> item : byItem.values()) {
+            Snapshot[] sorted = item.toArray(new Snapshot[0]);
+            Arrays.sort(sorted, Comparator.comparingLong(Snapshot::time));
+            series.add(sorted);
+        }
+    }
+
+    public static void main(String[] args) {
+        double slippage = 0.1;
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--slippage")) {
+                slippage = Double.parseDouble(args[++i]);
+            } else {
+                paths.add(Path.of(args[i]));
+            }
+        }
+        try {
+            Backtester backtester = new Backtester(load(paths), slippage);
+            //the grid is built around the current rule, so the current rule is run once as part of it
+            List<Report> reports = backtester.runAll(ThresholdStrategy.grid());
+            String current = ThresholdStrategy.current().describe();
+            for (Report report : reports) {
+                if (report.strategy().equals(current)) {
+                    System.out.println("Current rule: " + report);
+                }
+            }
+            for (Report report : reports) {
+                System.out.println(report);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads every recording in a list of files and directories
+     *
+     * @param paths Export files, or directories of them
+     * @return The snapshots in the recordings
+     * @throws IOException if a recording cannot be read
+     */
+    public static List<Snapshot> load(List<Path> paths) throws IOException {
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (Path path : paths) {
+            List<Path> files;
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> list = Files.list(path)) {
+                    files = list.filter(p -> p.toString().endsWith(".csv") || p.toString().endsWith(".jsonl")).sorted().collect(Collectors.toList());
+                }
+            } else {
+                files = List.of(path);
+            }
+            for (Path file : files) {
+                boolean csv = file.toString().endsWith(".csv");
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank() || csv && line.startsWith(MarketExporter.COLUMNS[0] + ",")) continue;
+                        snapshots.add(Snapshot.of(MarketExporter.parseRecord(line, csv)));
+                    }
+                }
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Runs every strategy in parallel
+     *
+     * @param strategies The strategies
+     * @return A report for every strategy, most profitable first
+     */
+    public List<Report> runAll(List<Strategy> strategies) throws InterruptedException, ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return pool.submit(() -> strategies.parallelStream()
+                    .map(this::run)
+                    .sorted(Comparator.comparingLong(Report::profit).reversed())
+                    .collect(Collectors.toList())).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Replays every item's recording through a strategy
+     *
+     * @param strategy The strategy
+     * @return How the strategy did
+     */
+    public Report run(Strategy strategy) {
+        List<Trade> trades = new ArrayList<>();
+        List<Trade> open = new ArrayList<>();
+        for (Snapshot[] item : series) {
+            Snapshot bought = null;
+            for (int i = 0; i + 1 < item.length; i++) {
+                Snapshot now = item[i];
+                Snapshot next = item[i + 1];
+                if (bought == null) {
+                    if (now.sellPrice != null && next.sellPrice != null && next.sellPrice <= now.sellPrice * (1 + slippage)
+                            && strategy.shouldBuy(now)) {
+                        bought = next;
+                    }
+                } else if (next.buyPrice != null && strategy.shouldSell(now, bought.sellPrice, now.time - bought.time)) {
+                    trades.add(new Trade(bought.time, next.time, bought.sellPrice, next.buyPrice));
+                    bought = null;
+                }
+            }
+            if (bought != null) {
+                open.add(new Trade(bought.time, Long.MAX_VALUE, bought.sellPrice, 0));
+            }
+        }
+
+        long profit = 0;
+        int hits = 0;
+        long spent = 0;
+        double[] profits = new double[trades.size()];
+        for (int i = 0; i < profits.length; i++) {
+            Trade trade = trades.get(i);
+            profits[i] = trade.received - trade.paid;
+            profit += trade.received - trade.paid;
+            if (trade.received > trade.paid) hits++;
+        }
+        //sweep through every buy and sell in time order to find the most platinum tied up at once
+        List<long[]> events = new ArrayList<>();
+        for (List<Trade> list : List.of(trades, open)) {
+            for (Trade trade : list) {
+                spent += trade.paid;
+                events.add(new long[]{trade.bought, trade.paid});
+                if (trade.sold != Long.MAX_VALUE) events.add(new long[]{trade.sold, -trade.paid});
+            }
+        }
+        //sells are processed before buys at the same time, since the platinum from a sale can pay for a purchase
+        events.sort(Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]));
+        long deployed = 0;
+        long peak = 0;
+        for (long[] event : events) {
+            deployed += event[1];
+            peak = Math.max(peak, deployed);
+        }
+        return new Report(strategy.describe(), trades.size(), profit, trades.isEmpty() ? 0 : hits / (double) trades.size(),
+                Statistics.median(profits), Statistics.standardDeviation(profits), peak == 0 ? 0 : spent / (double) peak, open.size());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * A cache that holds at most a budget of bytes, evicting the least recently used entries once it is over. Entries are weighed when they are
+ * put, so values must not grow afterwards. Every operation is synchronized.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public class BoundedCache<K, V> {
+    private final String name;
+    private final long budget;
+    private final ToLongBiFunction<K, V> weigher;
+    //in access order, so the first entry is the least recently used
+    private final LinkedHashMap<K, Weighted<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long evictions;
+
+    private record Weighted<V>(V value, long weight) {}
+
+    /**
+     * Creates a cache and reports it to {@link MemoryBudget}
+     *
+     * @param name    The name of the subsystem the cache belongs to
+     * @param budget  How many bytes the cache may hold
+     * @param weigher Estimates the bytes an entry holds, including its key
+     */
+    public BoundedCache(String name, long budget, ToLongBiFunction<K, V> weigher) {
+        this.name = name;
+        this.budget = budget;
+        this.weigher = weigher;
+        MemoryBudget.track(name, this::getWeight, budget);
+        Metrics.gauge("cache." + name + ".entries", this::size);
+        Metrics.gauge("cache." + name + ".evictions", this::getEvictions);
+    }
+
+    public synchronized V get(K key) {
+        Weighted<V> entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    public synchronized boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        Weighted<V> entry = new Weighted<>(value, weigher.applyAsLong(key, value) + MemoryBudget.entryOverhead());
+        Weighted<V> old = entries.put(key, entry);
+        if (old != null) weight -= old.weight;
+        weight += entry.weight;
+        evict();
+    }
+
+    /**
+     * Gets the value of a key, computing and caching it first if there is none
+     */
+    public synchronized V computeIfAbsent(K key, Function<K, V> function) {
+        V value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    public synchronized V remove(K key) {
+        Weighted<V> old = entries.remove(key);
+        if (old == null) return null;
+        weight -= old.weight;
+        return old.value;
+    }
+
+    /**
+     * Removes every entry whose key matches a filter
+     */
+    public synchronized void removeIf(Predicate<K> filter) {
+        Iterator<Map.Entry<K, Weighted<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Weighted<V>> entry = iterator.next();
+            if (filter.test(entry.getKey())) {
+                weight -= entry.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    private void evict() {
+        Iterator<Weighted<V>> iterator = entries.values().iterator();
+        //the newest entry is always kept, even if it is over the budget on its own
+        while (weight > budget && entries.size() > 1) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return The estimated bytes held by the cache
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long size() {
+        return entries.size();
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
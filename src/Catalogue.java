@@ -0,0 +1,169 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The list of every item on the market, saved between runs with a hash of the response it was read from. A response with the same hash is
+ * the same catalogue, so it does not have to be parsed again, and a different one is compared to the saved one by item id to find the items
+ * that were added, removed or renamed.
+ */
+public class Catalogue implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1;
+    private static final File storageFile = new File("src\\catalogue.bin");
+
+    /**
+     * An item of the catalogue
+     *
+     * @param id   The id of the item, which stays the same when it is renamed
+     * @param name The name of the item
+     * @param url  The name of the item in urls
+     */
+    public record Entry(String id, String name, String url) implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1;
+    }
+
+    public record Rename(Entry from, Entry to) {}
+
+    /**
+     * The differences between two catalogues
+     */
+    public record Changes(List<Entry> added, List<Entry> removed, List<Rename> renamed) {
+        public static final Changes NONE = new Changes(List.of(), List.of(), List.of());
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && renamed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return added.size() + " added, " + removed.size() + " removed, " + renamed.size() + " renamed";
+        }
+    }
+
+    private final List<Entry> entries;
+    private final String hash;
+
+    private Catalogue(List<Entry> entries, String hash) {
+        this.entries = List.copyOf(entries);
+        this.hash = hash;
+    }
+
+    /**
+     * Reads a catalogue from the body of an <code>/items</code> response
+     *
+     * @param body The body of the response
+     * @return The catalogue
+     */
+    public static Catalogue parse(String body) {
+        JSONArray items = new JSONObject(body).getJSONObject("payload").getJSONArray("items");
+        List<Entry> entries = new ArrayList<>(items.length());
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.getJSONObject(i);
+            String url = item.getString("url_name");
+            entries.add(new Entry(item.optString("id", url), item.getString("item_name"), url));
+        }
+        return new Catalogue(entries, hash(body));
+    }
+
+    /**
+     * @return The hash the catalogue is compared by, from the body of a response
+     */
+    public static String hash(String body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            //every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads the catalogue saved by a previous run
+     *
+     * @return The catalogue, or null if there is none
+     */
+    public static Catalogue load() {
+        if (!storageFile.exists()) return null;
+        try (ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new FileInputStream(storageFile)))) {
+            return (Catalogue) ois.readObject();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public void save() {
+        try {
+            Utils.writeObjectAtomically(storageFile, this);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Compares this catalogue to a newer one by item id
+     *
+     * @param newer The newer catalogue
+     * @return What changed between them
+     */
+    public Changes diff(Catalogue newer) {
+        if (hash.equals(newer.hash)) return Changes.NONE;
+        Map<String, Entry> old = new HashMap<>();
+        for (Entry entry : entries) {
+            old.put(entry.id, entry);
+        }
+        List<Entry> added = new ArrayList<>();
+        List<Rename> renamed = new ArrayList<>();
+        for (Entry entry : newer.entries) {
+            Entry before = old.remove(entry.id);
+            if (before == null) {
+                added.add(entry);
+            } else if (!before.name.equals(entry.name) || !before.url.equals(entry.url)) {
+                renamed.add(new Rename(before, entry));
+            }
+        }
+        //whatever is left is no longer on the market
+        return new Changes(added, new ArrayList<>(old.values()), renamed);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+}
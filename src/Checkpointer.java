@@ -0,0 +1,123 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Saves the scan state in the background. Refreshed items are collected as they are published and written to disk every interval if
+ * anything changed, so a crash loses at most one interval of scanning. Each write goes to a temporary file that is synced and then
+ * atomically renamed over the old one, so the saved state is never half written.
+ */
+public class Checkpointer implements ItemUpdateListener {
+    private final File file;
+    private final long interval;
+    //the latest version of every item, by key
+    private final Map<String, Item> state = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private final ScheduledExecutorService executor;
+    private final List<Runnable> saveHooks = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor
+     * @param file     The file the state is saved to
+     * @param interval How many seconds to wait between checkpoints
+     */
+    public Checkpointer(File file, long interval) {
+        this.file = file;
+        this.interval = interval;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Checkpointer");
+            //not a daemon so the final checkpoint is finished before the JVM exits
+            thread.setDaemon(false);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the items the state starts with, such as every row of the table. Refreshed items replace these as they arrive.
+     * @param items The items
+     */
+    public void seed(List<Item> items) {
+        for (Item item : items) {
+            state.put(item.getKey(), item);
+        }
+    }
+
+    /**
+     * Adds something else to save on the checkpointer's thread every time the items are checkpointed
+     * @param hook The task that saves it
+     */
+    public void addSaveHook(Runnable hook) {
+        saveHooks.add(hook);
+    }
+
+    public void start() {
+        executor.scheduleWithFixedDelay(this::checkpointIfDirty, interval, interval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void itemUpdated(Item item) {
+        state.put(item.getKey(), item);
+        dirty.set(true);
+    }
+
+    /**
+     * Stops saving an item, such as one that was removed from the catalogue
+     * @param key The key the item was saved under
+     */
+    public void forget(String key) {
+        if (state.remove(key) != null) {
+            dirty.set(true);
+        }
+    }
+
+    @Override
+    public void itemRemoved(String key) {
+        forget(key);
+    }
+
+    /**
+     * Writes a final checkpoint and stops. This does not wait for the write to finish.
+     */
+    public void close() {
+        dirty.set(true);
+        executor.execute(this::checkpointIfDirty);
+        executor.shutdown();
+    }
+
+    private void checkpointIfDirty() {
+        if (!dirty.getAndSet(false)) return;
+        try {
+            Utils.writeObjectAtomically(file, new ArrayList<>(state.values()));
+            for (Runnable hook : saveHooks) {
+                hook.run();
+            }
+        } catch (Exception e) {
+            //try again next interval
+            dirty.set(true);
+            e.printStackTrace();
+        }
+    }
+}
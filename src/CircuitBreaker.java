@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Serial;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling an endpoint that keeps failing. After enough failures in a row the breaker opens and every call fails right away until a
+ * cool-down has passed. Then a single trial call is let through: if it succeeds the breaker closes again, and if it fails the breaker opens
+ * for twice as long, up to a limit.
+ */
+public class CircuitBreaker {
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String name;
+    private final int failureThreshold;
+    private final long minOpenNanos;
+    private final long maxOpenNanos;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openNanos;
+    private long openUntil;
+    private long opened;
+
+    /**
+     * Constructor
+     * @param name             The name of the endpoint, for messages
+     * @param failureThreshold How many failures in a row open the breaker
+     * @param minOpenMillis    How long the breaker stays open the first time
+     * @param maxOpenMillis    The longest the breaker stays open after failed trials
+     */
+    public CircuitBreaker(String name, int failureThreshold, long minOpenMillis, long maxOpenMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.minOpenNanos = TimeUnit.MILLISECONDS.toNanos(minOpenMillis);
+        this.maxOpenNanos = TimeUnit.MILLISECONDS.toNanos(maxOpenMillis);
+        this.openNanos = minOpenNanos;
+    }
+
+    /**
+     * Asks to make a call. Must be followed by {@link #onSuccess()} or {@link #onFailure()} if it returns.
+     * @throws OpenException if the breaker is open, or a trial call is already being made
+     */
+    public synchronized void acquire() throws OpenException {
+        if (state == State.CLOSED) return;
+        long now = System.nanoTime();
+        if (state == State.OPEN && now - openUntil >= 0) {
+            state = State.HALF_OPEN;
+            return;
+        }
+        //while half open, the trial call is the only one let through, so the others wait about as long as it takes
+        long wait = state == State.HALF_OPEN ? 1000 : TimeUnit.NANOSECONDS.toMillis(openUntil - now);
+        throw new OpenException(name, wait);
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        openNanos = minOpenNanos;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN) {
+            openNanos = Math.min(maxOpenNanos, openNanos * 2);
+            open();
+        } else if (state == State.CLOSED && failures >= failureThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * Reports a call that ended without saying anything about the endpoint's health, such as one that was throttled. A trial call like that
+     * is made again.
+     */
+    public synchronized void onNeutral() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        opened++;
+        openUntil = System.nanoTime() + openNanos;
+        System.err.println("Pausing requests to " + name + " for " + TimeUnit.NANOSECONDS.toSeconds(openNanos) + "s after " + failures
+                + " failures");
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return How many times the breaker has opened
+     */
+    public synchronized long getOpenCount() {
+        return opened;
+    }
+
+    /**
+     * Thrown instead of making a call while the breaker is open
+     */
+    public static class OpenException extends IOException {
+        @Serial
+        private static final long serialVersionUID = 1;
+        public final long retryAfterMillis;
+
+        public OpenException(String name, long retryAfterMillis) {
+            super("Requests to " + name + " are paused for " + retryAfterMillis + "ms");
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+}
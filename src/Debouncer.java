@@ -0,0 +1,66 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a task on a background thread once no new task has been triggered for a delay. Triggering again cancels the previous task, and
+ * interrupts it if it is already running, so only the latest task ever finishes.
+ */
+public class Debouncer {
+    private final long delay;
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> pending;
+
+    /**
+     * Constructor
+     * @param name  The name of the background thread
+     * @param delay How long to wait after the last trigger, in milliseconds
+     */
+    public Debouncer(String name, long delay) {
+        this.delay = delay;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules a task to run after the delay, cancelling the task triggered before it. This never blocks the caller.
+     * @param task The task. Long tasks should check {@link Thread#isInterrupted()} and give up when they have been cancelled.
+     */
+    public synchronized void trigger(Runnable task) {
+        if (pending != null) {
+            pending.cancel(true);
+        }
+        pending = executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void cancel() {
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
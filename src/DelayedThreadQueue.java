@@ -19,36 +19,85 @@ import org.json.JSONObject;
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Schedules queued items for refreshing by the application's {@link RefreshPipeline}. Every platform has its own queue and the queues are
+ * served in turn, so the shared request budget is split evenly between the platforms being scanned. While the pipeline is full, this waits.
+ * <p>
+ * The queues are shared with the pipeline's threads, which push items back once they are done, so every access is synchronized.
+ */
 public class DelayedThreadQueue extends Thread{
-    private final ArrayDeque<Item> itemQueue;
+    private final EnumMap<Platform, ArrayDeque<Item>> itemQueues;
     private long delay;
     private volatile boolean shouldRun = true;
     private volatile boolean paused = false;
     private final Application app;
+    //the platform whose queue is served next
+    private int nextPlatform = 0;
     public DelayedThreadQueue(long delay, final Application application) {
-        itemQueue = new ArrayDeque<>();
+        itemQueues = new EnumMap<>(Platform.class);
+        for (Platform platform : Platform.values()) {
+            itemQueues.put(platform, new ArrayDeque<>());
+        }
         this.delay = delay;
         this.app = application;
     }
-    public void pushTask(Item r){
-        itemQueue.push(r);
+    public synchronized void pushTask(Item r){
+        getQueue(r.getPlatform()).push(r);
     }
-    public ArrayDeque<Item> getQueue(){
-        return itemQueue;
+    private ArrayDeque<Item> getQueue(Platform platform){
+        return itemQueues.get(platform);
     }
     public void pushTask(String name, int i){
-        Item item = new Item(name, i);
+        pushTask(name, Platform.PC, i);
+    }
+    public void pushTask(String name, Platform platform, int i){
+        Item item = new Item(name, null, platform, i);
         pushTask(item);
     }
-    public void addTask(Item r){
-        itemQueue.add(r);
+    public synchronized void addTask(Item r){
+        getQueue(r.getPlatform()).add(r);
+    }
+
+    /**
+     * Swaps a queued item for another in the same place, such as a row for its renamed copy. Nothing happens if the item is not queued.
+     * @param old         The queued item
+     * @param replacement The item to queue instead
+     */
+    public synchronized void replace(Item old, Item replacement){
+        ArrayDeque<Item> queue = getQueue(old.getPlatform());
+        for (int i = queue.size(); i > 0; i--) {
+            Item item = queue.poll();
+            queue.add(item == old ? replacement : item);
+        }
+    }
+
+    /**
+     * Takes the next item to refresh, moving on to the next platform's queue each time so no platform starves the others.
+     *
+     * @return The next item, or null if every queue is empty
+     */
+    private synchronized Item pollNext(){
+        Platform[] platforms = Platform.values();
+        for (int i = 0; i < platforms.length; i++) {
+            Platform platform = platforms[nextPlatform];
+            nextPlatform = (nextPlatform + 1) % platforms.length;
+            Item item = itemQueues.get(platform).pollLast();
+            if (item != null) {
+                return item;
+            }
+        }
+        return null;
     }
     @Override
     public void run() {
         while(shouldRun) {
             if(!paused) {
-                Item item = itemQueue.pollLast();
+                Item item = pollNext();
                 if (item != null) {
                     queueTask(item);
                     try {
@@ -61,8 +110,10 @@ public class DelayedThreadQueue extends Thread{
             onSpinWait();
         }
     }
-    public void purgeQueue(){
-        itemQueue.clear();
+    public synchronized void purgeQueue(){
+        for (ArrayDeque<Item> queue : itemQueues.values()) {
+            queue.clear();
+        }
     }
     public void setPaused(boolean paused){
         this.paused = paused;
@@ -73,64 +124,186 @@ public class DelayedThreadQueue extends Thread{
     public void terminate(){
         shouldRun = false;
     }
+    /**
+     * Hands an item to the pipeline to be refreshed and published, waiting while the pipeline is full. If the item belongs to a set, the set
+     * and all of its parts are refreshed with it so they can be compared using prices from the same moment.
+     * @param item The item to refresh
+     */
     public void queueTask(Item item){
-        MarketAPI.Pair<Structure.Order> order = null;
         try {
-            String name = item.name;
-            int loc = item.location;
-            boolean avgCached = MarketAPI.isCached(name, "90days");
-            JSONObject json = MarketAPI.getObject(name);
-            order = MarketAPI.getBestBuyAndSellOrders(json.getJSONObject("payload"));
-            if(!item.initialized){
-                item = new Item(json.getJSONObject("include").getJSONObject("item"));
-                item.location = loc;
-            }
+            app.getPipeline().submit(collectBatch(item), this);
+        } catch (InterruptedException e) {
+            pushTask(item);
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            Thread.sleep(400);
-            double avg90d = Math.round(MarketAPI.getAveragePrice90Days(name) * 100) / 100d;
-            double avg48h = Math.round(MarketAPI.getAveragePrice48Hours(name) * 100) / 100d;
-            ArrayList<Double> orderPrices = MarketAPI.getPrices90Days(name);
-
-            int trend = Trends.getLinearTrend(orderPrices).getDirection();
-            if(!avgCached)
-                Thread.sleep(400);
-            //if the item is new or has too few orders, try to get orders from a shorter time span
-            if(orderPrices.size() < 60){
-                orderPrices = MarketAPI.getPrices48Hours(name);
-            }
-            String trendName = "Even";
-            if(trend == -1)
-                trendName = "Decreasing";
-            else if(trend == 1)
-                trendName = "Increasing";
-            Integer profit = null;
-            if (order.left != null && order.right != null) {
-                profit = (int) Math.max(order.left.price - order.right.price, Math.min(avg90d, avg48h) - order.right.price);
-            } else {
-                if(order.right != null){
-                    profit = (int) Math.min(avg90d, avg48h) - order.right.price;
-                }
+    /**
+     * Gets the items to refresh together with an item. Other members of its sets are taken out of the queue so they are not refreshed
+     * again right after. Members that are not in this queue are left out, since they are being refreshed already or belong to another
+     * queue, and taking them would push a second copy of them back.
+     * @param item The item that was polled
+     * @return The item followed by the other queued members of its sets
+     */
+    private synchronized List<Item> collectBatch(Item item){
+        Set<String> names = ItemSets.getBatch(item.name);
+        List<Item> batch = new ArrayList<>(names.size());
+        batch.add(item);
+        if (names.size() == 1) {
+            return batch;
+        }
+        names.remove(item.name);
+        ArrayDeque<Item> queue = getQueue(item.getPlatform());
+        queue.removeIf(queued -> {
+            if (names.remove(queued.name)) {
+                batch.add(queued);
+                return true;
             }
+            return false;
+        });
+        return batch;
+    }
 
-            item.buyOrder = order.left;
-            item.sellOrder = order.right;
-            item.trendName = trendName;
-            item.profit = profit;
-            item.buyPrice = order.left == null ? null : order.left.price;
-            item.sellPrice = order.right == null ? null : order.right.price;
-            item.goodBuy = profit != null && profit > 3 && orderPrices.size() > 30 && trend == 1;
-            item.avg48h = avg48h;
-            item.avg90d = avg90d;
-            item.orderCount = orderPrices.size();
-
-            app.getWindow().getTableModel().getDataVector().set(item.location, item);
-            app.getWindow().getTableModel().fireTableRowsUpdated(item.location, item.location);
-            //});
-
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+    /**
+     * @param direction The direction of a trend, as given by {@link Trends.LinearTrend#getDirection()}
+     * @return The name of the trend shown in the table
+     */
+    static String getTrendName(int direction) {
+        return direction < 0 ? "Decreasing" : direction > 0 ? "Increasing" : "Even";
+    }
+
+    /**
+     * Rounds an average price to two decimals, the way it is shown in the table
+     */
+    static double roundPrice(double price) {
+        return Math.round(price * 100) / 100d;
+    }
+
+    static ArrayList<Double> getPrices(Map<String, ArrayList<Double>> statistics, String period, String name, Platform platform,
+                                               int level) {
+        ArrayList<Double> prices = statistics.get(MarketAPI.periodKey(period, MarketAPI.statisticsKey(name, platform, level)));
+        return prices == null ? new ArrayList<>() : prices;
+    }
+
+    private static Double roundedMean(ArrayList<Double> prices) {
+        return prices.isEmpty() ? null : Math.round(Trends.mean(prices) * 100) / 100d;
+    }
+
+    /**
+     * Reads the latest orders and statistics of an item from the API.
+     * @param item The item to refresh
+     * @return The refreshed item. This is a new item if the old one had not been initialized with its catalogue data yet.
+     * @throws IOException if a connection to the host cannot be established
+     */
+    public static Item refresh(Item item) throws IOException {
+        Item metadata = item.initialized ? null : getMetadata(item.name);
+        Map<String, ArrayList<Double>> statistics = MarketAPI.getCachedStatistics(item.name, item.getPlatform(),
+                getMaxRank(item.initialized ? item : metadata));
+        JSONObject json = MarketAPI.getObject(item.name, item.getPlatform());
+        long ordersRefreshed = System.currentTimeMillis();
+        boolean statisticsRead = statistics == null;
+        if (statisticsRead) {
+            statistics = MarketAPI.cacheStatistics(item.name, item.getPlatform(), MarketAPI.getItemStatistics(item.name, item.getPlatform()));
         }
+        return refresh(item, metadata, json, ordersRefreshed, statistics, statisticsRead);
+    }
 
-        pushTask(item);
+    /**
+     * Gets the catalogue data of an item, building it from {@link MetadataCache} if it is not registered. This may read the API.
+     * @param name The name of the item
+     * @return The catalogue data, shared by every platform
+     * @throws IOException if a connection to the host cannot be established
+     */
+    static Item getMetadata(String name) throws IOException {
+        Item metadata = Item.items.get(name);
+        if (metadata == null || !metadata.initialized) {
+            metadata = new Item(MetadataCache.get(name));
+            metadata.metadataRefreshed = System.currentTimeMillis();
+            Item.register(metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * @return The highest level an item is traded at, or 0 if it has no levels
+     */
+    static int getMaxRank(Item item) {
+        return item.maxRank == null ? 0 : item.maxRank;
+    }
+
+    /**
+     * Updates an item from data that was already read, without reading anything from the API
+     * @param item            The item to refresh
+     * @param metadata        The catalogue data of the item if it has not been initialized with it yet, otherwise null
+     * @param json            The orders of the item
+     * @param ordersRefreshed When the orders were read
+     * @param statistics      The statistics of the item by {@link MarketAPI#periodKey(String, String)}. A missing level has no trades
+     * @param statisticsRead  Whether the statistics were read along with the orders rather than taken from the cache
+     * @return The refreshed item. This is a new item if the old one had not been initialized with its catalogue data yet.
+     */
+    public static Item refresh(Item item, Item metadata, JSONObject json, long ordersRefreshed, Map<String, ArrayList<Double>> statistics,
+                               boolean statisticsRead) {
+        String name = item.name;
+        Platform platform = item.getPlatform();
+        int loc = item.location;
+        Map<Integer, MarketAPI.Pair<Structure.Order>> ordersByLevel = MarketAPI.getBestOrdersByLevel(json.getJSONObject("payload"));
+        MarketAPI.Pair<Structure.Order> order = ordersByLevel.getOrDefault(0, new MarketAPI.Pair<>(null, null));
+        MarketAPI.Pair<QuantileSketch> sketches = MarketAPI.getPriceSketches(json.getJSONObject("payload"));
+        OrderBook orderBook = OrderBook.of(json.getJSONObject("payload"));
+        //merged into halved copies, since the table may be reading the current sketches and older books should count for less
+        QuantileSketch buySketch = QuantileSketch.merge(item.buySketch == null ? null : item.buySketch.halved(), sketches.left);
+        QuantileSketch sellSketch = QuantileSketch.merge(item.sellSketch == null ? null : item.sellSketch.halved(), sketches.right);
+        if(!item.initialized){
+            //the catalogue data is the same on every platform, so it is only built once and shared
+            item = metadata.copyFor(platform, loc);
+        }
+        ArrayList<Double> orderPrices = getPrices(statistics, "90days", name, platform, 0);
+        double avg90d = roundPrice(Trends.mean(orderPrices));
+        double avg48h = roundPrice(Trends.mean(getPrices(statistics, "48hours", name, platform, 0)));
+        Double deviation90d = orderPrices.isEmpty() ? null : Statistics.standardDeviation(Statistics.toArray(orderPrices));
+
+        int trend = Trends.getLinearTrend(orderPrices).getDirection();
+        //if the item is new or has too few orders, try to get orders from a shorter time span
+        if(orderPrices.size() < 60){
+            orderPrices = getPrices(statistics, "48hours", name, platform, 0);
+        }
+        String trendName = getTrendName(trend);
+        Integer profit = null;
+        if (order.left != null && order.right != null) {
+            profit = (int) Math.max(order.left.price - order.right.price, Math.min(avg90d, avg48h) - order.right.price);
+        } else {
+            if(order.right != null){
+                profit = (int) Math.min(avg90d, avg48h) - order.right.price;
+            }
+        }
+
+        item.buyOrder = order.left;
+        item.orderBook = orderBook;
+        item.buySketch = buySketch;
+        item.sellSketch = sellSketch;
+        item.sellOrder = order.right;
+        item.trendName = trendName;
+        item.profit = profit;
+        item.buyPrice = order.left == null ? null : order.left.price;
+        item.sellPrice = order.right == null ? null : order.right.price;
+        item.goodBuy = profit != null && profit > 3 && orderPrices.size() > 30 && trend == 1;
+        item.avg48h = avg48h;
+        item.avg90d = avg90d;
+        item.deviation90d = deviation90d;
+        //max rank prices come from the orders and statistics already read, so they cost no extra requests
+        if (item.maxRank != null && item.maxRank > 0) {
+            MarketAPI.Pair<Structure.Order> maxRankOrder = ordersByLevel.get(item.maxRank);
+            item.maxRankBuyPrice = maxRankOrder == null || maxRankOrder.left == null ? null : maxRankOrder.left.price;
+            item.maxRankSellPrice = maxRankOrder == null || maxRankOrder.right == null ? null : maxRankOrder.right.price;
+            item.maxRankAvg48h = roundedMean(getPrices(statistics, "48hours", name, platform, item.maxRank));
+            item.maxRankAvg90d = roundedMean(getPrices(statistics, "90days", name, platform, item.maxRank));
+        }
+        item.orderCount = orderPrices.size();
+        item.ordersRefreshed = ordersRefreshed;
+        if (statisticsRead) {
+            item.statisticsRefreshed = System.currentTimeMillis();
+        }
+        item.lastRefreshed = System.currentTimeMillis();
+        return item;
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Plans how to buy prime parts for ducats as cheaply as possible, from the live sell orders of every part in {@link SellerIndex}. Parts are
+ * bought in trades of up to {@link #SLOTS_PER_TRADE} different parts from one seller, and every trade is counted as costing a little
+ * platinum so a plan with fewer trades wins when the prices are close.
+ * <p>
+ * Each seller's parts are sorted by platinum per ducat, and their next trade is the run of up to six of the cheapest parts left that gives
+ * the most ducats per platinum, counting the trade itself. Trades are taken from a priority queue, the most ducats per platinum first, and
+ * a seller's next trade only joins the queue once the one before it is taken. The last trade is the cheapest one that reaches the target on
+ * its own, with only as many parts as it needs.
+ */
+public class DucatPlanner {
+    /**
+     * How many different items fit in one trade
+     */
+    public static final int SLOTS_PER_TRADE = 6;
+
+    /**
+     * Parts bought from one order
+     */
+    public record Purchase(Item item, int price, int quantity) {
+        public int getDucats() {
+            return item.ducats * quantity;
+        }
+
+        public int getCost() {
+            return price * quantity;
+        }
+    }
+
+    /**
+     * One trade with a seller
+     */
+    public record Trade(Structure.UserShort seller, List<Purchase> purchases, int ducats, int platinum) {}
+
+    /**
+     * @param trades   The trades, in the order they were chosen
+     * @param ducats   The ducats all trades together give
+     * @param platinum What all trades together cost
+     */
+    public record Plan(List<Trade> trades, int ducats, int platinum) {
+        public double getDucatsPerPlat() {
+            return platinum == 0 ? 0 : ducats / (double) platinum;
+        }
+    }
+
+    /**
+     * A trade that could be made: the listings of a seller from <code>start</code> up to but not including <code>end</code>
+     */
+    private record Candidate(Structure.UserShort seller, List<SellerIndex.Listing> listings, int start, int end, int ducats, int platinum,
+                             double value) {}
+
+    private final SellerIndex sellers;
+
+    public DucatPlanner(SellerIndex sellers) {
+        this.sellers = sellers;
+    }
+
+    /**
+     * Plans the cheapest trades that add up to a number of ducats
+     *
+     * @param platform   The platform whose market to buy on
+     * @param target     How many ducats to reach
+     * @param tradeCost  How much platinum one more trade is worth avoiding
+     * @param maxTrades  The most trades the plan may have
+     * @param onlineOnly Whether to only buy from sellers who are online now
+     * @return The plan. It has fewer ducats than the target if there are not enough parts for sale or too few trades are allowed.
+     */
+    public Plan plan(Platform platform, int target, double tradeCost, int maxTrades, boolean onlineOnly) {
+        Map<Structure.UserShort, List<SellerIndex.Listing>> listings = sellers.getListingsBySeller(
+                item -> item.getPlatform() == platform && item.ducats != null && item.ducats > 0);
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(Comparator.comparingDouble(Candidate::value).reversed());
+        Comparator<SellerIndex.Listing> cheapestDucats = Comparator.comparingDouble(listing -> listing.price() / (double) listing.item().ducats);
+        for (Map.Entry<Structure.UserShort, List<SellerIndex.Listing>> entry : listings.entrySet()) {
+            if (onlineOnly && !entry.getKey().online) continue;
+            List<SellerIndex.Listing> sorted = new ArrayList<>(entry.getValue());
+            sorted.removeIf(listing -> listing.price() <= 0 || listing.quantity() <= 0);
+            if (sorted.isEmpty()) continue;
+            sorted.sort(cheapestDucats);
+            queue.add(candidate(entry.getKey(), sorted, 0, tradeCost));
+        }
+        List<Trade> trades = new ArrayList<>();
+        int ducats = 0;
+        int platinum = 0;
+        while (ducats < target && trades.size() < maxTrades && !queue.isEmpty()) {
+            int remaining = target - ducats;
+            Candidate best = queue.peek();
+            Trade trade = finish(best, remaining);
+            if (trade != null) {
+                //the best trade reaches the target on its own, but a trade that is worse on average may reach it for less
+                for (Candidate candidate : queue) {
+                    Trade other = finish(candidate, remaining);
+                    if (other != null && other.platinum < trade.platinum) trade = other;
+                }
+                queue.clear();
+            } else {
+                queue.poll();
+                trade = trade(best, best.end, Integer.MAX_VALUE);
+                if (best.end < best.listings.size()) {
+                    queue.add(candidate(best.seller, best.listings, best.end, tradeCost));
+                }
+            }
+            trades.add(trade);
+            ducats += trade.ducats;
+            platinum += trade.platinum;
+        }
+        return new Plan(trades, ducats, platinum);
+    }
+
+    /**
+     * Gets the cheapest way to finish the plan with one trade with the seller of a candidate, using any of the seller's next six listings
+     *
+     * @return The trade, or null if those listings do not have enough ducats
+     */
+    private static Trade finish(Candidate candidate, int remaining) {
+        Trade trade = trade(candidate, Math.min(candidate.listings.size(), candidate.start + SLOTS_PER_TRADE), remaining);
+        return trade.ducats >= remaining ? trade : null;
+    }
+
+    /**
+     * Makes the next trade of a seller from the listings starting at one. The listings are sorted cheapest per ducat first, so the best
+     * trade of any size takes the first few of them.
+     */
+    private static Candidate candidate(Structure.UserShort seller, List<SellerIndex.Listing> listings, int start, double tradeCost) {
+        Candidate best = null;
+        int ducats = 0;
+        int platinum = 0;
+        for (int end = start + 1; end <= Math.min(listings.size(), start + SLOTS_PER_TRADE); end++) {
+            SellerIndex.Listing listing = listings.get(end - 1);
+            ducats += listing.item().ducats * listing.quantity();
+            platinum += listing.price() * listing.quantity();
+            double value = ducats / (platinum + tradeCost);
+            if (best == null || value > best.value) {
+                best = new Candidate(seller, listings, start, end, ducats, platinum, value);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Buys the parts of a candidate trade, cheapest per ducat first, until it has a number of ducats
+     *
+     * @param end The listing to stop before
+     */
+    private static Trade trade(Candidate candidate, int end, int ducats) {
+        List<Purchase> purchases = new ArrayList<>();
+        int bought = 0;
+        int platinum = 0;
+        for (int i = candidate.start; i < end && bought < ducats; i++) {
+            SellerIndex.Listing listing = candidate.listings.get(i);
+            int each = listing.item().ducats;
+            int quantity = (int) Math.min(listing.quantity(), ((long) ducats - bought + each - 1) / each);
+            Purchase purchase = new Purchase(listing.item(), listing.price(), quantity);
+            purchases.add(purchase);
+            bought += purchase.getDucats();
+            platinum += purchase.getCost();
+        }
+        return new Trade(candidate.seller, purchases, bought, platinum);
+    }
+}
@@ -19,19 +19,29 @@ import org.json.JSONObject;
 
 import java.io.Serial;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 
 @SuppressWarnings("SerializableHasSerializationMethods")
-public class Item implements Serializable {
+public class Item implements Serializable, Cloneable {
     @Serial
     private static final long serialVersionUID = 5;
-    public static HashMap<String, Item> items = new HashMap<>();
+    /**
+     * The catalogue data of items, by name. Evicted items are built again from {@link MetadataCache} when they are needed.
+     */
+    public static final BoundedCache<String, Item> items = new BoundedCache<>("items", MemoryBudget.share(0.25),
+            (name, item) -> item.estimateMetadataSize());
+    public static final String[] COLUMN_NAMES = {"Name", "Buy Price", "Sell Price", "Profit", "Average Price (48h)", "Average Price (90d)",
+            "Trend", "Orders", "Profitable?", "Relics", "Tags", "Ducats", "Ducats/Plat", "Platform", "Buy p10", "Buy p50", "Buy p90",
+            "Sell p10", "Sell p50", "Sell p90", "Max Rank Buy", "Max Rank Sell", "Max Rank Avg (48h)", "Max Rank Avg (90d)"};
 
     //mandatory parameters
     public String name;
     public String url;
     public String[] tags;
     public transient String wikiLink;
+    //the market this item's prices come from. Snapshots from before platforms were tracked leave this null, meaning PC
+    Platform platform;
 
     //for prime items
     public String[] relics;
@@ -44,17 +54,39 @@ public class Item implements Serializable {
     //keeps track of if this was initialized with JSON or not
     public boolean initialized;
 
+    //when each part of this item was last read from the API, in epoch milliseconds. 0 if never
+    long lastRefreshed;
+    long metadataRefreshed;
+    long ordersRefreshed;
+    long statisticsRefreshed;
+
     //data for the table
     transient int location;
     transient Structure.Order buyOrder;
     transient Structure.Order sellOrder;
-    transient String trendName;
-    transient Integer profit;
-    transient Integer buyPrice;
-    transient Integer sellPrice;
-    transient boolean goodBuy;
+    //every order from the last refresh. Not saved, since a restored book would be out of date
+    transient OrderBook orderBook;
+    //saved with the item so a restored table is useful before its first refresh. lastRefreshed says how old these are
+    String trendName;
+    Integer profit;
+    Integer buyPrice;
+    Integer sellPrice;
+    boolean goodBuy;
     Double avg90d;
     Double avg48h;
+    //the spread of the daily prices over the last 90 days. Worked out again from the statistics rather than saved
+    transient Double deviation90d;
+    //prices at max rank (or radiant for relics), for items with ranks
+    Integer maxRankBuyPrice;
+    Integer maxRankSellPrice;
+    Double maxRankAvg48h;
+    Double maxRankAvg90d;
+    //the distribution of order prices over recent refreshes, each counting half as much as the one after it. Replaced rather than changed
+    //once the item is in the table
+    QuantileSketch buySketch;
+    QuantileSketch sellSketch;
+    //the score from every scoring rule, shown after the fixed columns. Recomputed rather than saved, since the rules can change
+    transient volatile double[] scores;
 
     public Item(JSONObject obj) {
         JSONArray itemsInSet = obj.getJSONArray("items_in_set");
@@ -68,6 +100,7 @@ public class Item implements Serializable {
                 break;
             }
         }
+        ItemSets.register(itemsInSet);
 
         JSONObject en = thisItem.getJSONObject("en");
 
@@ -90,6 +123,12 @@ public class Item implements Serializable {
                 mod = true;
             }
         }
+        //the highest level the item is traded at: the max rank of mods, and radiant for relics
+        if (thisItem.has("mod_max_rank")) {
+            this.maxRank = thisItem.getInt("mod_max_rank");
+        } else if (Arrays.asList(tags).contains("relic")) {
+            this.maxRank = 3;
+        }
         if (prime && !mod) {
             //define ducat price
             this.ducats = thisItem.getInt("ducats");
@@ -102,6 +141,7 @@ public class Item implements Serializable {
                     JSONObject dropSource = dropSources.getJSONObject(i);
                     String name = dropSource.getString("name");
                     this.relics[i] = name.substring(0, name.indexOf("Relic")-1);
+                    RelicIndex.register(this.name, this.relics[i], RelicIndex.Rarity.of(dropSource.optString("rarity", null), ducats));
                 }
             }
         }
@@ -113,27 +153,108 @@ public class Item implements Serializable {
     }
 
     public Item(String name, String url, int location) {
+        this(name, url, Platform.PC, location);
+    }
+
+    public Item(String name, String url, Platform platform, int location) {
         this.name = name;
         this.url = url;
+        this.platform = platform;
         this.location = location;
         initialized = false;
     }
 
+    /**
+     * Creates an item for another platform that shares the catalogue data (tags, relics, ducats) of this one. Market data is not copied.
+     *
+     * @param platform The platform of the new item
+     * @param location The row of the new item in the table
+     * @return A new item with this item's metadata
+     */
+    public Item copyFor(Platform platform, int location) {
+        Item copy = new Item(name, url, platform, location);
+        copy.tags = tags;
+        copy.wikiLink = wikiLink;
+        copy.relics = relics;
+        copy.ducats = ducats;
+        copy.maxRank = maxRank;
+        copy.initialized = initialized;
+        copy.metadataRefreshed = metadataRefreshed;
+        return copy;
+    }
+
+    /**
+     * Copies this item, market data and all, under the name an item was renamed to. Rows are swapped for a renamed copy rather than renamed
+     * in place, since the refresh pipeline reads the name and url of the rows it is refreshing.
+     *
+     * @param name The new name
+     * @param url  The new url, used only if this item has one
+     * @return The renamed copy
+     */
+    public Item renamed(String name, String url) {
+        Item copy;
+        try {
+            copy = (Item) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        copy.name = name;
+        if (copy.url != null) copy.url = url;
+        return copy;
+    }
+
+    public Platform getPlatform() {
+        return Utils.notNull(platform, Platform.PC);
+    }
+
+    /**
+     * Gets a key that identifies this item on its platform. The same item on two platforms has two different keys.
+     *
+     * @return The key of this item
+     */
+    public String getKey() {
+        return MarketAPI.cacheKey(name, getPlatform());
+    }
+
+    /**
+     * Orders items so the ones most in need of a refresh come first: items that were never initialized, then the ones refreshed longest
+     * ago.
+     */
+    public static final Comparator<Item> STALEST_FIRST = Comparator.<Item, Boolean>comparing(item -> item.initialized)
+            .thenComparingLong(item -> item.lastRefreshed);
+
+    /**
+     * Estimates the bytes held by this item and its catalogue data. Market data is not counted, since registered items do not have any.
+     */
+    long estimateMetadataSize() {
+        //the item itself, with compressed references
+        long size = 224;
+        size += MemoryBudget.sizeOf(name) + MemoryBudget.sizeOf(url) + MemoryBudget.sizeOf(wikiLink);
+        size += MemoryBudget.sizeOf(tags) + MemoryBudget.sizeOf(relics);
+        return size;
+    }
+
     public static void register(Item item) {
         items.put(item.name, item);
     }
 
     public static Class<?> getColumnClass(int columnIndex) {
+        if (columnIndex >= COLUMN_NAMES.length) {
+            return Double.class;
+        }
         return switch (columnIndex) {
-            case 0, 6, 9, 10 -> String.class;
-            case 1, 2, 7, 11 -> Integer.class;
-            case 3, 4, 5, 12 -> Double.class;
+            case 0, 6, 9, 10, 13 -> String.class;
+            case 1, 2, 7, 11, 20, 21 -> Integer.class;
+            case 3, 4, 5, 12, 14, 15, 16, 17, 18, 19, 22, 23 -> Double.class;
             case 8 -> Boolean.class;
             default -> Object.class;
         };
     }
 
     public Object getValueAt(int columnIndex) {
+        if (columnIndex >= COLUMN_NAMES.length) {
+            return getScore(columnIndex - COLUMN_NAMES.length);
+        }
         return switch (columnIndex) {
             default -> this;
             case 0 -> Utils.notNull(name, "undefined");
@@ -149,10 +270,37 @@ public class Item implements Serializable {
             case 10 -> Utils.notNull(Utils.arrayToString(tags), "");
             case 11 -> Utils.notNull(ducats, 0);
             case 12 -> calculateDucatsPerPlat();
+            case 13 -> getPlatform().displayName;
+            case 14 -> getQuantile(buySketch, 0.1);
+            case 15 -> getQuantile(buySketch, 0.5);
+            case 16 -> getQuantile(buySketch, 0.9);
+            case 17 -> getQuantile(sellSketch, 0.1);
+            case 18 -> getQuantile(sellSketch, 0.5);
+            case 19 -> getQuantile(sellSketch, 0.9);
+            case 20 -> maxRankBuyPrice;
+            case 21 -> maxRankSellPrice;
+            case 22 -> maxRankAvg48h;
+            case 23 -> maxRankAvg90d;
         };
     }
 
-    private double calculateDucatsPerPlat() {
+    private static Double getQuantile(QuantileSketch sketch, double fraction) {
+        return sketch == null || sketch.isEmpty() ? null : sketch.getQuantile(fraction);
+    }
+
+    /**
+     * @param rule The index of a scoring rule
+     * @return The item's score from the rule, or null if it has not been scored or is missing data the rule needs
+     */
+    public Double getScore(int rule) {
+        double[] scores = this.scores;
+        if (scores == null || rule >= scores.length || Double.isNaN(scores[rule])) {
+            return null;
+        }
+        return scores[rule];
+    }
+
+    double calculateDucatsPerPlat() {
         if(ducats == null || ducats == 0)
             return 0;
         if(Utils.notNull(sellPrice, 0) == 0 && Utils.notNull(avg48h, 0d) == 0)
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Finds the table rows that match a search. Searches are meant to run off the event dispatch thread; the result is then applied on it with
+ * {@link #apply(String, BitSet)}. When a search only extends the previous one, the previous matches are narrowed down instead of checking
+ * every row again.
+ */
+public class ItemSearch implements ItemUpdateListener {
+    private List<Item> rows = List.of();
+    //lower case tag or relic -> the rows that have it, since those are matched exactly rather than by substring
+    private final HashMap<String, BitSet> exact = new HashMap<>();
+    //the last search that finished, used to narrow the next one
+    private List<String> lastConditions;
+    private BitSet lastMatches;
+    //the search shown in the table. A null set shows every row
+    private String query = "";
+    private BitSet visible;
+    //rows of items that were removed from the catalogue. Their rows stay so no other row moves, but they are never shown
+    private final BitSet hidden = new BitSet();
+
+    /**
+     * Sets the rows to search. A row's index in the list must be its location.
+     * @param rows The rows
+     */
+    public synchronized void setRows(List<Item> rows) {
+        this.rows = rows;
+        exact.clear();
+        for (Item item : rows) {
+            index(item);
+        }
+        hidden.clear();
+        lastConditions = null;
+        lastMatches = null;
+    }
+
+    /**
+     * Indexes rows that were added to the end of the rows
+     * @param added The new rows
+     */
+    public synchronized void addRows(List<Item> added) {
+        for (Item item : added) {
+            index(item);
+        }
+    }
+
+    /**
+     * Stops showing a row, for an item that is no longer on the market
+     * @param location The location of the row
+     */
+    public synchronized void hide(int location) {
+        hidden.set(location);
+        if (visible != null) visible.clear(location);
+        if (lastMatches != null) lastMatches.clear(location);
+    }
+
+    private void index(Item item) {
+        if (item.tags != null) {
+            for (String tag : item.tags) {
+                exact.computeIfAbsent(tag.toLowerCase(), k -> new BitSet()).set(item.location);
+            }
+        }
+        if (item.relics != null) {
+            for (String relic : item.relics) {
+                exact.computeIfAbsent(relic.toLowerCase(), k -> new BitSet()).set(item.location);
+            }
+        }
+    }
+
+    /**
+     * Refreshed items may have gained tags and relics, and may now match the visible search or stop matching it
+     */
+    @Override
+    public synchronized void itemUpdated(Item item) {
+        index(item);
+        if (visible != null) {
+            visible.set(item.location, matches(item, query));
+        }
+        if (lastMatches != null) {
+            lastMatches.set(item.location, matches(item, lastConditions));
+        }
+    }
+
+    /**
+     * Finds the rows matching a search. This can take a while for broad searches and gives up if the thread is interrupted.
+     *
+     * @param query The search text
+     * @return The locations of the matching rows, or null if every row matches or the search was interrupted
+     */
+    public BitSet search(String query) {
+        List<String> conditions = getConditions(query);
+        if (conditions.isEmpty()) {
+            return null;
+        }
+        List<Item> snapshot;
+        BitSet candidates;
+        synchronized (this) {
+            snapshot = rows;
+            candidates = narrow(lastConditions, lastMatches, conditions);
+        }
+        BitSet matches = new BitSet(snapshot.size());
+        if (candidates == null) {
+            for (int i = 0; i < snapshot.size(); i++) {
+                if ((i & 255) == 0 && Thread.currentThread().isInterrupted()) return null;
+                if (matches(snapshot.get(i), conditions)) matches.set(i);
+            }
+        } else {
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if ((i & 255) == 0 && Thread.currentThread().isInterrupted()) return null;
+                if (matches(snapshot.get(i), conditions)) matches.set(i);
+            }
+        }
+        synchronized (this) {
+            matches.andNot(hidden);
+            if (snapshot == rows) {
+                lastConditions = conditions;
+                lastMatches = (BitSet) matches.clone();
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Gets the rows that could match a search given the matches of the previous one, if the new search can only match a subset of them.
+     * That is the case when it adds conditions, or extends a condition that is not inverted. Tags and relics are matched exactly rather
+     * than by substring, so rows with the extended tag or relic are added as candidates too.
+     *
+     * @return The candidate rows, or null if every row has to be checked
+     */
+    private BitSet narrow(List<String> previous, BitSet previousMatches, List<String> conditions) {
+        if (previous == null || previousMatches == null || conditions.size() < previous.size()) {
+            return null;
+        }
+        BitSet candidates = (BitSet) previousMatches.clone();
+        for (int i = 0; i < previous.size(); i++) {
+            String before = previous.get(i);
+            String after = conditions.get(i);
+            if (after.equals(before)) continue;
+            if (before.startsWith("!") || !after.startsWith(before)) {
+                return null;
+            }
+            String term = after.startsWith("#") ? after.substring(1) : after;
+            BitSet exactMatches = exact.get(term);
+            if (exactMatches != null) {
+                candidates.or(exactMatches);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Shows the result of a search in the table. Must be called on the event dispatch thread.
+     *
+     * @param query   The search text
+     * @param matches The result of {@link #search(String)}
+     */
+    public synchronized void apply(String query, BitSet matches) {
+        this.query = query;
+        this.visible = matches;
+    }
+
+    public synchronized boolean isVisible(Item item) {
+        return !hidden.get(item.location) && (visible == null || visible.get(item.location));
+    }
+
+    /**
+     * @return The items matching the search shown in the table
+     */
+    public synchronized List<Item> getVisibleItems() {
+        BitSet shown = visible;
+        if (shown == null) {
+            shown = new BitSet(rows.size());
+            shown.set(0, rows.size());
+            shown.andNot(hidden);
+        }
+        List<Item> items = new ArrayList<>(shown.cardinality());
+        for (int i = shown.nextSetBit(0); i >= 0; i = shown.nextSetBit(i + 1)) {
+            items.add(rows.get(i));
+        }
+        return items;
+    }
+
+    /**
+     * Splits a search into its comma separated conditions, in lower case since matching ignores case
+     */
+    private static List<String> getConditions(String query) {
+        List<String> conditions = new ArrayList<>();
+        for (String condition : query.trim().split(",")) {
+            condition = condition.trim();
+            if (!condition.isBlank()) {
+                conditions.add(condition.toLowerCase());
+            }
+        }
+        return conditions;
+    }
+
+    //todo allow permissive filters rather than exclusive (i.e show things that match A & B, but also show things that match A || B)
+    public static boolean matches(Item item, String query) {
+        return matches(item, getConditions(query));
+    }
+
+    private static boolean matches(Item item, List<String> conditions) {
+        //["Meso N1", "!Meso N10"]
+        for (String condition : conditions) {
+            boolean inverted = condition.charAt(0) == '!';
+            String firstTrim = inverted ? condition.substring(1) : condition;
+            boolean searchTagOnly = (firstTrim.length() > 1) && firstTrim.charAt(0) == '#';
+            final String searchText = searchTagOnly ? firstTrim.substring(1) : firstTrim;
+            boolean valid = false;
+            if (!searchTagOnly && Utils.containsIgnoreCase(item.name, searchText)) {
+                valid = true;
+            } else if (item.tags != null && Arrays.stream(item.tags).anyMatch((s) -> s.equalsIgnoreCase(searchText))) {
+                valid = true;
+            } else if (!searchTagOnly && item.relics != null && Arrays.stream(item.relics).anyMatch((s) -> s.equalsIgnoreCase(searchText))) {
+                valid = true;
+            }
+            if (valid == inverted) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
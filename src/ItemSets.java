@@ -0,0 +1,137 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Graph of which parts make up which sets. Sets point to their parts (with the quantity needed) and parts point back to every set they
+ * belong to, so a changed part can find the sets it affects without scanning every set.
+ */
+public class ItemSets {
+    //set name -> part name -> quantity needed for the set
+    private static final HashMap<String, Map<String, Integer>> parts = new HashMap<>();
+    //part name -> the sets that contain it
+    private static final HashMap<String, Set<String>> sets = new HashMap<>();
+
+    /**
+     * Records the composition of a set from the <code>items_in_set</code> array the API returns with an item
+     *
+     * @param itemsInSet The items in the set, including the set itself
+     */
+    public static void register(JSONArray itemsInSet) {
+        String root = null;
+        LinkedHashMap<String, Integer> composition = new LinkedHashMap<>();
+        for (int i = 0; i < itemsInSet.length(); i++) {
+            JSONObject cur = itemsInSet.getJSONObject(i);
+            String name = cur.getJSONObject("en").getString("item_name");
+            if (cur.optBoolean("set_root", false)) {
+                root = name;
+            } else {
+                composition.put(name, cur.optInt("quantity_for_set", 1));
+            }
+        }
+        //items that are not part of a set only list themselves
+        if (root == null || composition.isEmpty()) return;
+        register(root, composition);
+    }
+
+    public static synchronized void register(String set, Map<String, Integer> composition) {
+        Map<String, Integer> old = parts.put(set, Collections.unmodifiableMap(new LinkedHashMap<>(composition)));
+        if (old != null) {
+            for (String part : old.keySet()) {
+                Set<String> containing = sets.get(part);
+                if (containing != null) containing.remove(set);
+            }
+        }
+        for (String part : composition.keySet()) {
+            sets.computeIfAbsent(part, k -> new LinkedHashSet<>()).add(set);
+        }
+    }
+
+    /**
+     * Forgets an item that was removed from the catalogue or renamed: the set it is, if it is one, and its place in every set it is a part
+     * of
+     *
+     * @param name The name of the item
+     */
+    public static synchronized void remove(String name) {
+        Map<String, Integer> old = parts.remove(name);
+        if (old != null) {
+            for (String part : old.keySet()) {
+                Set<String> containing = sets.get(part);
+                if (containing != null) containing.remove(name);
+            }
+        }
+        Set<String> containing = sets.remove(name);
+        if (containing != null) {
+            for (String set : containing) {
+                LinkedHashMap<String, Integer> composition = new LinkedHashMap<>(parts.get(set));
+                composition.remove(name);
+                parts.put(set, Collections.unmodifiableMap(composition));
+            }
+        }
+    }
+
+    public static synchronized boolean isSet(String name) {
+        return parts.containsKey(name);
+    }
+
+    /**
+     * @param set The name of a set
+     * @return The parts of the set and how many of each it needs, or an empty map if it is not a known set
+     */
+    public static synchronized Map<String, Integer> getParts(String set) {
+        return parts.getOrDefault(set, Map.of());
+    }
+
+    /**
+     * Gets the sets affected by a change to an item: the item itself if it is a set, and every set it is a part of.
+     *
+     * @param name The name of the item
+     * @return The affected sets
+     */
+    public static synchronized Set<String> getAffectedSets(String name) {
+        LinkedHashSet<String> affected = new LinkedHashSet<>();
+        if (parts.containsKey(name)) affected.add(name);
+        affected.addAll(sets.getOrDefault(name, Set.of()));
+        return affected;
+    }
+
+    /**
+     * Gets every item that should be refreshed together with an item so the sets it affects are compared using prices from the same
+     * moment: the affected sets and all of their parts.
+     *
+     * @param name The name of the item
+     * @return The names of the items to refresh together, starting with the item itself
+     */
+    public static synchronized Set<String> getBatch(String name) {
+        LinkedHashSet<String> batch = new LinkedHashSet<>();
+        batch.add(name);
+        for (String set : getAffectedSets(name)) {
+            batch.add(set);
+            batch.addAll(parts.get(set).keySet());
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+
+/**
+ * Notified every time an item has been refreshed with new market data
+ */
+@FunctionalInterface
+public interface ItemUpdateListener {
+    /**
+     * Called after an item has been refreshed. This is called from the thread that refreshed the item, not the event dispatch thread.
+     *
+     * @param item The refreshed item
+     */
+    void itemUpdated(Item item);
+
+    /**
+     * Called after a batch of items has been refreshed together, such as a set and its parts. By default every item is passed to
+     * {@link #itemUpdated(Item)} in turn.
+     *
+     * @param items The refreshed items
+     */
+    default void itemsUpdated(List<Item> items) {
+        for (Item item : items) {
+            itemUpdated(item);
+        }
+    }
+
+    /**
+     * Called after an item was removed from the catalogue or renamed, with the key it had. Anything kept under that key should be dropped,
+     * since no update will ever come for it again. By default nothing is kept, so nothing is done.
+     *
+     * @param key The old key of the item
+     */
+    default void itemRemoved(String key) {
+    }
+}
@@ -21,21 +21,142 @@ import javax.net.ssl.HttpsURLConnection;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Serial;
 import java.net.URL;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MarketAPI {
     //TODO store information about how many orders are available to determine what to check first
     public static final String ApiUrl = "https://api.warframe.market/v1";
     public static final String ItemsUrl = ApiUrl + "/items";
-    public static final String OrdersUrl = "/orders?include=item";
-    public static final String StatisticsUrl = "/statistics?include=item";
-    public static HashMap<String, HashMap<String, ArrayList<Double>>> averagePriceCache = new HashMap<>();
-    static HashMap<String, String> itemURLS = new HashMap<>();
-    static List<String> itemNames = new ArrayList<>();
+    //item metadata is kept in MetadataCache, so these do not ask for it with include=item
+    public static final String OrdersUrl = "/orders";
+    public static final String StatisticsUrl = "/statistics";
+    /**
+     * Cached statistics, keyed by {@link #periodKey(String, String)}. Statistics that are evicted are read from the API again when needed.
+     */
+    public static final BoundedCache<String, ArrayList<Double>> averagePriceCache = new BoundedCache<>("statistics",
+            MemoryBudget.share(0.6), (key, prices) -> MemoryBudget.sizeOf(key) + MemoryBudget.sizeOfDoubles(prices));
+    //every request needs an item's url, so these are never evicted. They grow with the catalogue only
+    static volatile Map<String, String> itemURLS = Map.of();
+    private static volatile long itemUrlBytes;
+    static {
+        MemoryBudget.track("itemUrls", () -> itemUrlBytes);
+    }
+    //sorted, and replaced as a whole when the catalogue changes
+    static volatile List<String> itemNames = List.of();
+    //the catalogue the names and urls are from, or null if none was loaded
+    private static Catalogue catalogue;
+    private static volatile boolean catalogueSynced;
+    /**
+     * Paces every request sent through {@link #GET(URL, Request...)}. Starts at the old fixed pace of one request every 400ms.
+     */
+    public static final RateLimiter rateLimiter = new RateLimiter(2.5, 0.5, 10, 0.5, 0.5);
+    /**
+     * How many times a request is tried before it fails
+     */
+    public static final int MAX_ATTEMPTS = 3;
+    //the delay before the first retry and the most any retry waits, in milliseconds. Each retry waits about twice as long as the last
+    private static final long RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 8000;
+    /**
+     * Whether slow requests are sent a second time. Off unless the <code>warframe.hedge</code> system property is true, since every hedge
+     * spends a request of the rate limit.
+     */
+    public static volatile boolean hedging = Boolean.getBoolean("warframe.hedge");
+    private static final ExecutorService hedgeExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "Hedged request");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The kinds of request sent to the API. Each has its own timeouts and {@link CircuitBreaker}, so one that is failing does not pause the
+     * others.
+     */
+    public enum Endpoint {
+        ORDERS(5_000, 10_000),
+        STATISTICS(5_000, 15_000),
+        ITEM(5_000, 15_000),
+        CATALOGUE(10_000, 60_000);
+
+        //never hedge sooner than this, in milliseconds
+        private static final long MIN_HEDGE_DELAY = 250;
+        //how many responses are timed before requests are hedged
+        private static final int MIN_SAMPLES = 20;
+        final int connectTimeout;
+        final int readTimeout;
+        final CircuitBreaker breaker;
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong hedges = new AtomicLong();
+        //how long responses take, in milliseconds
+        private final QuantileSketch latencies = new QuantileSketch();
+
+        Endpoint(int connectTimeout, int readTimeout) {
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+            this.breaker = new CircuitBreaker(name().toLowerCase(), 5, 30_000, 300_000);
+            String metric = "api." + name().toLowerCase() + ".";
+            Metrics.gauge(metric + "retries", retries::get);
+            Metrics.gauge(metric + "hedges", hedges::get);
+            Metrics.gauge(metric + "breakerOpened", breaker::getOpenCount);
+            Metrics.gauge(metric + "breakerState", () -> breaker.getState().ordinal());
+            Metrics.gauge(metric + "p99Millis", () -> (long) getLatency(0.99));
+        }
+
+        /**
+         * @return The endpoint an address belongs to
+         */
+        static Endpoint of(URL address) {
+            String path = address.getPath();
+            if (path.endsWith(OrdersUrl)) return ORDERS;
+            if (path.endsWith(StatisticsUrl)) return STATISTICS;
+            if (path.endsWith("/items")) return CATALOGUE;
+            return ITEM;
+        }
+
+        synchronized void recordLatency(long nanos) {
+            latencies.update(TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+
+        /**
+         * @return A quantile of how long responses take in milliseconds, or NaN if none have been timed
+         */
+        public synchronized double getLatency(double quantile) {
+            return latencies.getQuantile(quantile);
+        }
+
+        synchronized boolean canHedge() {
+            return latencies.getCount() >= MIN_SAMPLES;
+        }
+
+        /**
+         * @return How long to wait for a response before sending the request again: longer than 95% of responses take
+         */
+        long getHedgeDelay() {
+            return Math.max(MIN_HEDGE_DELAY, (long) getLatency(0.95));
+        }
+    }
 
     public static Structure.Order getBestSellOffer(String name) throws IOException {
         JSONArray orders = getObject(name).getJSONArray("orders");
@@ -65,25 +186,185 @@ public class MarketAPI {
     }
 
     public static JSONObject getObject(String name) throws IOException {
-        return new JSONObject(MarketAPI.GET(new URL(MarketAPI.ItemUrl(name) +
-                OrdersUrl), new Request("accept", "application/json"), new Request("Platform", "pc")));
+        return getObject(name, Platform.PC);
+    }
+
+    public static JSONObject getObject(String name, Platform platform) throws IOException {
+        return new JSONObject(fetchOrders(name, platform));
+    }
+
+    /**
+     * Reads the orders of an item without parsing them, so the parsing can be done on another thread
+     *
+     * @return The body of the response
+     */
+    public static String fetchOrders(String name, Platform platform) throws IOException {
+        return MarketAPI.GET(new URL(MarketAPI.ItemUrl(name) + OrdersUrl), new Request("accept", "application/json"),
+                new Request("Platform", platform.id));
     }
 
 
+    /**
+     * Sends a GET request to the API through the {@link Endpoint} it belongs to. Every attempt is paced by {@link #rateLimiter}, and
+     * throttling responses (HTTP 429/503) are reported back to it so the request rate adapts to what the API currently allows.
+     * <p>
+     * Attempts that time out, fail to connect, or get a server error are retried up to {@link #MAX_ATTEMPTS} times in all, after a random
+     * delay that doubles with every attempt. Failures are counted by the endpoint's {@link CircuitBreaker}, so an endpoint that keeps failing
+     * is paused instead of being retried forever.
+     *
+     * @param address  The address to request
+     * @param requests The request properties to send
+     * @return The body of the response
+     * @throws ThrottledException           if the API throttled every attempt
+     * @throws CircuitBreaker.OpenException if requests to the endpoint are paused
+     * @throws IOException                  if a connection to the host cannot be established
+     */
     public static String GET(URL address, Request... requests) throws IOException {
+        Endpoint endpoint = Endpoint.of(address);
+        IOException failure = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                endpoint.retries.incrementAndGet();
+                backOff(attempt);
+            }
+            endpoint.breaker.acquire();
+            try {
+                String body = hedging && endpoint.canHedge() ? sendHedged(endpoint, address, requests) : send(endpoint, address, requests);
+                endpoint.breaker.onSuccess();
+                return body;
+            } catch (ThrottledException e) {
+                //the rate limiter already waits for the API, so this says nothing about the endpoint's health
+                endpoint.breaker.onNeutral();
+                failure = e;
+            } catch (HttpException e) {
+                //the request itself was wrong, such as an item that does not exist, so trying again would not help
+                endpoint.breaker.onSuccess();
+                throw e;
+            } catch (InterruptedIOException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    endpoint.breaker.onNeutral();
+                    throw e;
+                }
+                //otherwise the attempt timed out
+                endpoint.breaker.onFailure();
+                failure = e;
+            } catch (IOException e) {
+                endpoint.breaker.onFailure();
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Sleeps before a retry, for a random time of up to twice the delay of the attempt before, so clients that failed together do not retry
+     * together
+     */
+    private static void backOff(int attempt) throws InterruptedIOException {
+        long cap = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << (attempt - 1));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap / 2, cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * Sends one attempt of a request
+     */
+    private static String send(Endpoint endpoint, URL address, Request... requests) throws IOException {
         StringBuilder sb = new StringBuilder();
+        rateLimiter.acquire();
+        long start = System.nanoTime();
         HttpsURLConnection httpsConnection = (HttpsURLConnection) address.openConnection();
+        httpsConnection.setConnectTimeout(endpoint.connectTimeout);
+        httpsConnection.setReadTimeout(endpoint.readTimeout);
         httpsConnection.setRequestMethod("GET");
         for (Request request : requests) {
             httpsConnection.setRequestProperty(request.request, request.data);
         }
-        BufferedReader br = new BufferedReader(new InputStreamReader(httpsConnection.getInputStream()));
-        String line = br.readLine();
-        if (line != null) sb.append(line);
-        while ((line = br.readLine()) != null) {
-            sb.append("\n").append(line);
+        try {
+            int code = httpsConnection.getResponseCode();
+            if (code == 429 || code == 503) {
+                long retryAfter = parseRetryAfter(httpsConnection.getHeaderField("Retry-After"));
+                rateLimiter.onThrottled(retryAfter);
+                throw new ThrottledException(code, retryAfter, address);
+            }
+            if (code >= 500) {
+                throw new IOException("HTTP " + code + " for " + address);
+            }
+            if (code >= 400) {
+                throw new HttpException(code, address);
+            }
+            rateLimiter.onSuccess(System.nanoTime() - start);
+            BufferedReader br = new BufferedReader(new InputStreamReader(httpsConnection.getInputStream()));
+            String line = br.readLine();
+            if (line != null) sb.append(line);
+            while ((line = br.readLine()) != null) {
+                sb.append("\n").append(line);
+            }
+            endpoint.recordLatency(System.nanoTime() - start);
+            return sb.toString();
+        } catch (IOException e) {
+            httpsConnection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends an attempt of a request, and a second copy of it if the first is slower than most responses of the endpoint. Whichever succeeds
+     * first is used, so one stalled connection does not hold up the item.
+     */
+    private static String sendHedged(Endpoint endpoint, URL address, Request... requests) throws IOException {
+        CompletionService<String> attempts = new ExecutorCompletionService<>(hedgeExecutor);
+        List<Future<String>> futures = new ArrayList<>(2);
+        futures.add(attempts.submit(() -> send(endpoint, address, requests)));
+        try {
+            Future<String> done = attempts.poll(endpoint.getHedgeDelay(), TimeUnit.MILLISECONDS);
+            if (done == null) {
+                endpoint.hedges.incrementAndGet();
+                futures.add(attempts.submit(() -> send(endpoint, address, requests)));
+            }
+            IOException failure = null;
+            for (int i = 0; i < futures.size(); i++) {
+                if (done == null) done = attempts.take();
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                }
+                done = null;
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + address);
+        } finally {
+            for (Future<String> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Parses the value of a <code>Retry-After</code> header, which is either a number of seconds or an HTTP date.
+     *
+     * @param value The header value
+     * @return The requested delay in milliseconds, or 0 if there is none
+     */
+    private static long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) return 0;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(), date).toMillis());
+            } catch (DateTimeParseException ignored) {
+                return 0;
+            }
         }
-        return sb.toString();
     }
 
     public static String ItemUrl(String name) {
@@ -125,7 +406,19 @@ public class MarketAPI {
      * @return the average price of an item
      */
     public static double getAveragePrice90Days(String name) throws IOException {
-        return getAveragePrice90Days(name, false);
+        return getAveragePrice90Days(name, Platform.PC);
+    }
+
+    /**
+     * Gets the average price of an item over the last 90 days on a platform. This will use a cached value if it is available to reduce the
+     * dependency on API calls.
+     *
+     * @param name     The name of the item
+     * @param platform The platform whose market to read
+     * @return the average price of an item
+     */
+    public static double getAveragePrice90Days(String name, Platform platform) throws IOException {
+        return getAveragePrice90Days(name, platform, false);
     }
 
     /**
@@ -133,49 +426,211 @@ public class MarketAPI {
      * parameter and if a value is cached.
      *
      * @param name        The name of the item
+     * @param platform    The platform whose market to read
      * @param forceUpdate Whether to force an update by reading from the API
      * @return the average price of an item
      */
-    private static double getAveragePrice90Days(String name, boolean forceUpdate) throws IOException {
-        return Trends.mean(getPrices(name, "90days", forceUpdate));
+    private static double getAveragePrice90Days(String name, Platform platform, boolean forceUpdate) throws IOException {
+        return Trends.mean(getPrices(name, platform, "90days", forceUpdate));
     }
 
     public static boolean isCached(String name, String key){
-        return averagePriceCache.containsKey(key) && averagePriceCache.get(key).containsKey(name);
+        return isCached(name, Platform.PC, key);
+    }
+
+    public static boolean isCached(String name, Platform platform, String key){
+        return averagePriceCache.containsKey(periodKey(key, cacheKey(name, platform)));
     }
 
-    private static ArrayList<Double> getPrices(String name, String key, boolean forceUpdate) throws IOException {
+    /**
+     * Gets the key an item's statistics are cached under. Every platform has its own market, so each is cached separately.
+     *
+     * @param name     The name of the item
+     * @param platform The platform
+     * @return The cache key
+     */
+    static String cacheKey(String name, Platform platform) {
+        return platform.id + "/" + name;
+    }
+
+    /**
+     * Drops the cached statistics of an item so they are read from the API next time
+     *
+     * @param name     The name of the item
+     * @param platform The platform
+     */
+    public static void uncache(String name, Platform platform) {
+        String cacheKey = cacheKey(name, platform);
+        averagePriceCache.removeIf(key -> {
+            String statisticsKey = key.substring(key.indexOf(':') + 1);
+            return statisticsKey.equals(cacheKey) || statisticsKey.startsWith(cacheKey + "#");
+        });
+    }
+
+    /**
+     * Gets the key the statistics of a period are cached under
+     *
+     * @param period        The period, such as <code>90days</code>
+     * @param statisticsKey The {@link #statisticsKey(String, Platform, int)} of the item
+     */
+    static String periodKey(String period, String statisticsKey) {
+        return period + ":" + statisticsKey;
+    }
+
+    /**
+     * Gets the key the statistics of one level of an item are cached under. Level 0 uses the item's {@link #cacheKey(String, Platform)}.
+     */
+    static String statisticsKey(String name, Platform platform, int level) {
+        return level == 0 ? cacheKey(name, platform) : cacheKey(name, platform) + "#" + level;
+    }
+
+    private static ArrayList<Double> getPrices(String name, Platform platform, String key, boolean forceUpdate) throws IOException {
+        return getPrices(name, platform, 0, key, forceUpdate);
+    }
+
+    private static ArrayList<Double> getPrices(String name, Platform platform, int level, String key, boolean forceUpdate) throws IOException {
+        String cacheKey = periodKey(key, statisticsKey(name, platform, level));
         //if the value is already cached, return it
-        if (!forceUpdate && averagePriceCache.containsKey(key) && averagePriceCache.get(key).containsKey(name)) {
-            return averagePriceCache.get(key).get(name);
+        ArrayList<Double> prices = forceUpdate ? null : averagePriceCache.get(cacheKey);
+        if (prices != null) {
+            return prices;
         }
-        //cache the value, then return it
-        ArrayList<Double> prices = new ArrayList<>();
-        JSONObject statistics = getItemStatistics(name);
-        JSONArray period = statistics.getJSONArray(key);
-
-        for (int i = 0; i < period.length(); i++) {
-            JSONObject obj = period.getJSONObject(i);
-            if (Structure.getLevel(obj) != 0) continue;
-            prices.add(obj.getDouble("median"));
+        prices = cacheStatistics(name, platform).get(cacheKey);
+        if (prices == null) {
+            //a level nobody has traded is cached as empty so it is not read again
+            prices = new ArrayList<>();
+            averagePriceCache.put(cacheKey, prices);
         }
-        averagePriceCache.putIfAbsent(key, new HashMap<>());
-        averagePriceCache.get(key).put(name, prices);
         return prices;
     }
 
+    /**
+     * Reads the statistics of an item once and caches the daily medians of every period and every level (mod rank or relic refinement) in
+     * them, replacing what was cached before
+     *
+     * @param name     The name of the item
+     * @param platform The platform whose market to read
+     * @return Everything that was cached, by {@link #periodKey(String, String)}, since the cache may evict some of it right away
+     * @throws IOException if a connection to the host cannot be established
+     */
+    private static Map<String, ArrayList<Double>> cacheStatistics(String name, Platform platform) throws IOException {
+        return cacheStatistics(name, platform, getItemStatistics(name, platform));
+    }
+
+    /**
+     * Caches statistics that were already read
+     *
+     * @param name       The name of the item
+     * @param platform   The platform the statistics are from
+     * @param statistics The closed statistics of the item
+     * @return Everything that was cached, by {@link #periodKey(String, String)}
+     * @see #parseStatistics(String)
+     */
+    static Map<String, ArrayList<Double>> cacheStatistics(String name, Platform platform, JSONObject statistics) {
+        Map<String, ArrayList<Double>> cached = new HashMap<>();
+        for (String key : new String[]{"90days", "48hours"}) {
+            HashMap<Integer, ArrayList<Double>> levels = new HashMap<>();
+            //level 0 is always cached, even if it has no rows
+            levels.put(0, new ArrayList<>());
+            JSONArray period = statistics.optJSONArray(key);
+            if (period != null) {
+                for (int i = 0; i < period.length(); i++) {
+                    JSONObject obj = period.getJSONObject(i);
+                    levels.computeIfAbsent(Structure.getLevel(obj), k -> new ArrayList<>()).add(obj.getDouble("median"));
+                }
+            }
+            for (Map.Entry<Integer, ArrayList<Double>> entry : levels.entrySet()) {
+                String cacheKey = periodKey(key, statisticsKey(name, platform, entry.getKey()));
+                averagePriceCache.put(cacheKey, entry.getValue());
+                cached.put(cacheKey, entry.getValue());
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Takes the cached statistics of an item all at once, so none of them can be evicted before they are used
+     *
+     * @param name     The name of the item
+     * @param platform The platform
+     * @param level    A level to take besides level 0, such as the item's max rank. Ignored if it is 0
+     * @return The statistics by {@link #periodKey(String, String)}, or null if level 0 is not cached. The other level is left out if it is
+     * not cached, like a level nobody has traded
+     */
+    static Map<String, ArrayList<Double>> getCachedStatistics(String name, Platform platform, int level) {
+        Map<String, ArrayList<Double>> cached = new HashMap<>();
+        for (String period : new String[]{"90days", "48hours"}) {
+            String key = periodKey(period, statisticsKey(name, platform, 0));
+            ArrayList<Double> prices = averagePriceCache.get(key);
+            if (prices == null) return null;
+            cached.put(key, prices);
+            if (level > 0) {
+                key = periodKey(period, statisticsKey(name, platform, level));
+                prices = averagePriceCache.get(key);
+                if (prices != null) cached.put(key, prices);
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Gets the prices of an item at a level, such as a mod rank or relic refinement, over the last 90 days. These come from the same request
+     * as every other level, so a level costs no extra request once any level has been read.
+     *
+     * @param name     The name of the item
+     * @param platform The platform whose market to read
+     * @param level    The level
+     * @return The median price of every day the item was traded at that level, oldest first
+     */
+    public static ArrayList<Double> getPrices90Days(String name, Platform platform, int level) throws IOException {
+        return getPrices(name, platform, level, "90days", false);
+    }
+
+    /**
+     * Same as {@link #getPrices90Days(String, Platform, int)} for the last 48 hours
+     */
+    public static ArrayList<Double> getPrices48Hours(String name, Platform platform, int level) throws IOException {
+        return getPrices(name, platform, level, "48hours", false);
+    }
+
     public static JSONObject getItemStatistics(String name) throws IOException {
-        JSONObject obj = new JSONObject(MarketAPI.GET(new URL(MarketAPI.ItemUrl(name) +
-                StatisticsUrl), new MarketAPI.Request("accept", "application/json"), new MarketAPI.Request("Platform", "pc")));
+        return getItemStatistics(name, Platform.PC);
+    }
+
+    public static JSONObject getItemStatistics(String name, Platform platform) throws IOException {
+        return parseStatistics(fetchStatistics(name, platform));
+    }
+
+    /**
+     * Reads the statistics of an item without parsing them, so the parsing can be done on another thread
+     *
+     * @return The body of the response
+     * @see #parseStatistics(String)
+     */
+    public static String fetchStatistics(String name, Platform platform) throws IOException {
+        return MarketAPI.GET(new URL(MarketAPI.ItemUrl(name) + StatisticsUrl), new MarketAPI.Request("accept", "application/json"),
+                new MarketAPI.Request("Platform", platform.id));
+    }
+
+    /**
+     * @param body The body of a statistics response
+     * @return The closed statistics in it
+     */
+    public static JSONObject parseStatistics(String body) {
+        JSONObject obj = new JSONObject(body);
         return (JSONObject) ((JSONObject) obj.get("payload")).get("statistics_closed");
     }
 
     public static ArrayList<Double> getPrices90Days(String name) throws IOException {
-        return getPrices90Days(name, false);
+        return getPrices90Days(name, Platform.PC);
     }
 
-    private static ArrayList<Double> getPrices90Days(String name, boolean forceUpdate) throws IOException {
-        return getPrices(name, "90days", forceUpdate);
+    public static ArrayList<Double> getPrices90Days(String name, Platform platform) throws IOException {
+        return getPrices90Days(name, platform, false);
+    }
+
+    private static ArrayList<Double> getPrices90Days(String name, Platform platform, boolean forceUpdate) throws IOException {
+        return getPrices(name, platform, "90days", forceUpdate);
     }
 
     /**
@@ -186,7 +641,19 @@ public class MarketAPI {
      * @return the average price of an item
      */
     public static double getAveragePrice48Hours(String name) throws IOException {
-        return getAveragePrice48Hours(name, false);
+        return getAveragePrice48Hours(name, Platform.PC);
+    }
+
+    /**
+     * Gets the average price of an item over the last 48 hours on a platform. This will use a cached value if it is available to reduce the
+     * dependency on API calls.
+     *
+     * @param name     The name of the item
+     * @param platform The platform whose market to read
+     * @return the average price of an item
+     */
+    public static double getAveragePrice48Hours(String name, Platform platform) throws IOException {
+        return getAveragePrice48Hours(name, platform, false);
     }
 
     //TODO make this contain null values if there are no orders
@@ -196,19 +663,24 @@ public class MarketAPI {
      * parameter and if a value is cached.
      *
      * @param name        The name of the item
+     * @param platform    The platform whose market to read
      * @param forceUpdate Whether to force an update by reading from the API
      * @return the average price of an item
      */
-    private static double getAveragePrice48Hours(String name, boolean forceUpdate) throws IOException {
-        return Trends.mean(getPrices(name, "48hours", forceUpdate));
+    private static double getAveragePrice48Hours(String name, Platform platform, boolean forceUpdate) throws IOException {
+        return Trends.mean(getPrices(name, platform, "48hours", forceUpdate));
     }
 
     public static ArrayList<Double> getPrices48Hours(String name) throws IOException {
-        return getPrices48Hours(name, false);
+        return getPrices48Hours(name, Platform.PC);
     }
 
-    private static ArrayList<Double> getPrices48Hours(String name, boolean forceUpdate) throws IOException {
-        return getPrices(name, "48hours", forceUpdate);
+    public static ArrayList<Double> getPrices48Hours(String name, Platform platform) throws IOException {
+        return getPrices48Hours(name, platform, false);
+    }
+
+    private static ArrayList<Double> getPrices48Hours(String name, Platform platform, boolean forceUpdate) throws IOException {
+        return getPrices(name, platform, "48hours", forceUpdate);
     }
 
     /**
@@ -219,70 +691,144 @@ public class MarketAPI {
      * @throws IOException if a connection to the host cannot be established
      */
     public static Pair<Structure.Order> getBestBuyAndSellOrders(String name) throws IOException {
-        return getBestBuyAndSellOrders(getObject(name));
+        return getBestBuyAndSellOrders(name, Platform.PC);
     }
-    public static Pair<Structure.Order> getBestBuyAndSellOrders(JSONObject json) throws IOException {
-        JSONArray orders = json.getJSONArray("orders");
 
-        //buy
-        Structure.Order bestBuy = null;
+    public static Pair<Structure.Order> getBestBuyAndSellOrders(String name, Platform platform) throws IOException {
+        return getBestBuyAndSellOrders(getObject(name, platform));
+    }
+    public static Pair<Structure.Order> getBestBuyAndSellOrders(JSONObject json) throws IOException {
+        return getBestOrdersByLevel(json).getOrDefault(0, new Pair<>(null, null));
+    }
 
+    /**
+     * Gets the best buy and sell orders of every level of an item, such as each mod rank or relic refinement, in one pass over its orders.
+     * Only visible orders of online users count. Ties on price go to the user with the most reputation.
+     *
+     * @param json The payload of an item's orders
+     * @return The best buy order on the left and the best sell order on the right, by level. Levels with no orders are left out.
+     */
+    public static Map<Integer, Pair<Structure.Order>> getBestOrdersByLevel(JSONObject json) {
+        JSONArray orders = json.getJSONArray("orders");
+        HashMap<Integer, Structure.Order> bestBuys = new HashMap<>();
+        HashMap<Integer, Structure.Order> bestSells = new HashMap<>();
         for (int i = 0; i < orders.length(); i++) {
             Structure.Order current = new Structure.Order(orders.getJSONObject(i));
-            if (current.user.online && current.visible) {
-                if (!current.selling && current.level == 0) {
-                    if (bestBuy == null) {
-                        bestBuy = current;
-                    } else if (current.price > bestBuy.price) {
-                        bestBuy = current;
-                    } else if (current.price == bestBuy.price) {
-                        if (current.user.reputation > bestBuy.user.reputation) {
-                            bestBuy = current;
-                        }
-                    }
-                }
+            if (!current.user.online || !current.visible) continue;
+            if (current.selling) {
+                bestSells.merge(current.level, current, (best, order) -> order.price < best.price
+                        || order.price == best.price && order.user.reputation > best.user.reputation ? order : best);
+            } else {
+                bestBuys.merge(current.level, current, (best, order) -> order.price > best.price
+                        || order.price == best.price && order.user.reputation > best.user.reputation ? order : best);
             }
         }
-        //sell
-        Structure.Order bestSell = null;
+        HashMap<Integer, Pair<Structure.Order>> best = new HashMap<>();
+        for (Integer level : bestBuys.keySet()) {
+            best.put(level, new Pair<>(bestBuys.get(level), bestSells.get(level)));
+        }
+        for (Integer level : bestSells.keySet()) {
+            best.putIfAbsent(level, new Pair<>(null, bestSells.get(level)));
+        }
+        return best;
+    }
+
+    /**
+     * Builds a sketch of the prices of every visible buy order and every visible sell order, whether or not their owners are online. Each
+     * order counts once however many it is for, so a single big listing cannot move the distribution.
+     * @param json The payload of an item's orders
+     * @return The sketch of the buy orders on the left and of the sell orders on the right
+     */
+    public static Pair<QuantileSketch> getPriceSketches(JSONObject json) {
+        JSONArray orders = json.getJSONArray("orders");
+        QuantileSketch buy = new QuantileSketch();
+        QuantileSketch sell = new QuantileSketch();
         for (int i = 0; i < orders.length(); i++) {
-            Structure.Order current = new Structure.Order(orders.getJSONObject(i));
-            if (current.user.online && current.visible) {
-                if (current.selling && current.level == 0) {
-                    if (bestSell == null) bestSell = current;
-                    if (current.price < bestSell.price) {
-                        bestSell = current;
-                    } else if (current.price == bestSell.price) {
-                        if (current.user.reputation > bestSell.user.reputation) {
-                            bestSell = current;
-                        }
-                    }
-                }
+            JSONObject order = orders.getJSONObject(i);
+            if (!order.optBoolean("visible", true) || Structure.getLevel(order) != 0) continue;
+            if (order.getString("order_type").equals("sell")) {
+                sell.update(order.getInt("platinum"));
+            } else {
+                buy.update(order.getInt("platinum"));
             }
         }
-        return new Pair<>(bestBuy, bestSell);
-
+        return new Pair<>(buy, sell);
     }
+    /**
+     * Loads the catalogue of items. The one saved by the last run is used if there is one, so starting up needs no request, and
+     * {@link #syncCatalogue()} brings it up to date later. Otherwise it is read from the API.
+     */
     public static void loadItems() {
-        try {
-            String get = GET(new URL("https://api.warframe.market/v1/items"));
-            JSONObject obj = (JSONObject) new JSONObject(get).get("payload");
-            JSONArray items = obj.getJSONArray("items");
-            for (int i = 0; i < items.length(); i++) {
-                JSONObject JSONItem = (JSONObject) items.get(i);
-                String name = JSONItem.getString("item_name");
-                String url = JSONItem.getString("url_name");
-                itemURLS.put(name, url);
-                itemNames.add(name);
-                Item item = new Item(name, i);
-                Item.register(item);
+        Catalogue saved = Catalogue.load();
+        if (saved != null) {
+            synchronized (MarketAPI.class) {
+                useCatalogue(saved);
             }
-            itemNames.sort(Comparator.naturalOrder());
+            return;
+        }
+        try {
+            syncCatalogue();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Reads the catalogue from the API and, if it changed, switches the item names and urls over to it and saves it. The statistics and
+     * catalogue data of items that were removed or renamed are dropped.
+     *
+     * @return What changed since the catalogue that was in use
+     * @throws IOException if a connection to the host cannot be established
+     */
+    public static synchronized Catalogue.Changes syncCatalogue() throws IOException {
+        String body = GET(new URL(ItemsUrl));
+        catalogueSynced = true;
+        //the same response is the same catalogue, so it is not parsed again
+        if (catalogue != null && catalogue.getHash().equals(Catalogue.hash(body))) {
+            return Catalogue.Changes.NONE;
+        }
+        Catalogue fetched = Catalogue.parse(body);
+        Catalogue.Changes changes = catalogue == null ? Catalogue.Changes.NONE : catalogue.diff(fetched);
+        List<Catalogue.Entry> gone = new ArrayList<>(changes.removed());
+        for (Catalogue.Rename rename : changes.renamed()) {
+            gone.add(rename.from());
+        }
+        for (Catalogue.Entry entry : gone) {
+            Item.items.remove(entry.name());
+            ItemSets.remove(entry.name());
+            MetadataCache.remove(entry.name());
+            for (Platform platform : Platform.values()) {
+                uncache(entry.name(), platform);
+            }
+        }
+        useCatalogue(fetched);
+        fetched.save();
+        return changes;
+    }
+
+    /**
+     * @return Whether the catalogue has been read from the API since the application started
+     */
+    public static boolean isCatalogueSynced() {
+        return catalogueSynced;
+    }
+
+    private static void useCatalogue(Catalogue catalogue) {
+        Map<String, String> urls = new ConcurrentHashMap<>();
+        List<String> names = new ArrayList<>(catalogue.getEntries().size());
+        long bytes = 0;
+        for (Catalogue.Entry entry : catalogue.getEntries()) {
+            urls.put(entry.name(), entry.url());
+            names.add(entry.name());
+            bytes += MemoryBudget.entryOverhead() + MemoryBudget.sizeOf(entry.name()) + MemoryBudget.sizeOf(entry.url());
+        }
+        names.sort(Comparator.naturalOrder());
+        itemURLS = urls;
+        itemNames = Collections.unmodifiableList(names);
+        itemUrlBytes = bytes;
+        MarketAPI.catalogue = catalogue;
+    }
+
     public static final class Pair<T> {
         public final T left;
         public final T right;
@@ -294,4 +840,34 @@ public class MarketAPI {
     }
 
     public record Request(String request, String data) {}
+
+    /**
+     * Thrown when the API answers a request with a client error, such as an item that does not exist. These are not retried.
+     */
+    public static class HttpException extends IOException {
+        @Serial
+        private static final long serialVersionUID = 1;
+        public final int responseCode;
+
+        public HttpException(int responseCode, URL address) {
+            super("HTTP " + responseCode + " for " + address);
+            this.responseCode = responseCode;
+        }
+    }
+
+    /**
+     * Thrown when the API refuses a request because we are sending too many
+     */
+    public static class ThrottledException extends IOException {
+        @Serial
+        private static final long serialVersionUID = 1;
+        public final int responseCode;
+        public final long retryAfterMillis;
+
+        public ThrottledException(int responseCode, long retryAfterMillis, URL address) {
+            super("HTTP " + responseCode + " for " + address + (retryAfterMillis > 0 ? ", retry after " + retryAfterMillis + "ms" : ""));
+            this.responseCode = responseCode;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line mode that scans the whole catalogue without a window and streams every item to a CSV or JSON Lines file as soon as it is
+ * refreshed. Only a bounded number of items are in flight at once, so the orders and statistics read are written out and dropped rather
+ * than piling up, and an interrupted export can be resumed from the items already in the file. Sellers are not kept in
+ * {@link UserRegistry}, since nothing in the output uses them, so memory does not grow with the size of the market. What is still kept is
+ * the catalogue: the names and urls of every item, their metadata within the limits of {@link MemoryBudget}, and their sets.
+ * <p>
+ * Usage: <code>export [--format csv|jsonl] [--output file] [--platform pc] [--threads n] [--resume]</code>
+ */
+public class MarketExporter {
+    public static final String[] COLUMNS = {"name", "platform", "refreshed", "buyPrice", "sellPrice", "profit", "avg48h", "avg90d",
+            "orderCount", "trend", "ducats"};
+
+    private final Path output;
+    private final boolean csv;
+    private final Platform platform;
+    private final int threads;
+    private final boolean resume;
+
+    public MarketExporter(Path output, boolean csv, Platform platform, int threads, boolean resume) {
+        this.output = output;
+        this.csv = csv;
+        this.platform = platform;
+        this.threads = threads;
+        this.resume = resume;
+    }
+
+    public static void main(String[] args) {
+        String format = "jsonl";
+        String output = null;
+        Platform platform = Platform.PC;
+        int threads = 4;
+        boolean resume = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--format" -> format = args[++i];
+                case "--output" -> output = args[++i];
+                case "--platform" -> platform = Platform.fromId(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--resume" -> resume = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (!format.equals("csv") && !format.equals("jsonl")) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        if (output == null) {
+            output = "market-" + platform.id + "." + format;
+        }
+        try {
+            new MarketExporter(Path.of(output), format.equals("csv"), platform, threads, resume).run();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Scans every item in the catalogue that is not already in the output and appends it to the output
+     * @throws IOException if the output cannot be written
+     * @throws InterruptedException if the export is interrupted
+     */
+    public void run() throws IOException, InterruptedException {
+        UserRegistry.setEnabled(false);
+        MarketAPI.loadItems();
+        MetadataCache.load();
+        boolean append = resume && Files.exists(output);
+        Set<String> done = append ? readExported() : Set.of();
+        List<String> pending = new ArrayList<>();
+        for (String name : MarketAPI.itemNames) {
+            if (!done.contains(name)) pending.add(name);
+        }
+        System.out.println("Exporting " + pending.size() + " items to " + output + (done.isEmpty() ? "" : " (" + done.size() + " already done)"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+             Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), 1 << 16)) {
+            if (csv && !append) {
+                out.write(String.join(",", COLUMNS));
+                out.write('\n');
+            }
+            ExecutorCompletionService<Item> completion = new ExecutorCompletionService<>(pool);
+            int next = 0;
+            int inFlight = 0;
+            int written = 0;
+            while (next < pending.size() || inFlight > 0) {
+                //only keep a couple of items per thread in flight so refreshed items do not pile up waiting to be written
+                while (inFlight < threads * 2 && next < pending.size()) {
+                    Item item = new Item(pending.get(next++), null, platform, 0);
+                    completion.submit(() -> DelayedThreadQueue.refresh(item));
+                    inFlight++;
+                }
+                Future<Item> result = completion.take();
+                inFlight--;
+                try {
+                    Item item = result.get();
+                    out.write(csv ? toCsv(item) : toJson(item).toString());
+                    out.write('\n');
+                    MarketAPI.uncache(item.name, platform);
+                    //flush regularly so an interrupted export loses little, resuming cuts off anything half written
+                    if (++written % 50 == 0) {
+                        out.flush();
+                    }
+                } catch (ExecutionException e) {
+                    //left out of the file so a resumed export tries it again
+                    System.err.println("Failed to export an item: " + e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            MetadataCache.saveIfDirty();
+        }
+    }
+
+    /**
+     * Cuts off a partially written last line, then reads the names of the items already in the output for the platform being exported.
+     * Items exported for another platform, such as into a reused output file, are exported again for this one.
+     */
+    private Set<String> readExported() throws IOException {
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            while (end > 0) {
+                buffer.clear();
+                channel.read(buffer, end - 1);
+                if (buffer.get(0) == '\n') break;
+                end--;
+            }
+            channel.truncate(end);
+        }
+        Set<String> names = new HashSet<>();
+        int otherPlatforms = 0;
+        try (BufferedReader reader = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+            String line;
+            boolean first = true;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                boolean header = first && csv && line.startsWith(COLUMNS[0] + ",");
+                first = false;
+                if (header) continue;
+                JSONObject record = parseRecord(line, csv);
+                if (Platform.fromId(record.getString("platform")) == platform) {
+                    names.add(record.getString("name"));
+                } else {
+                    otherPlatforms++;
+                }
+            }
+        }
+        if (otherPlatforms > 0) {
+            System.err.println(output + " has " + otherPlatforms + " items from other platforms, which do not count as exported for " + platform);
+        }
+        return names;
+    }
+
+    public static JSONObject toJson(Item item) {
+        JSONObject json = new JSONObject();
+        Object[] values = values(item);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            json.put(COLUMNS[i], values[i] == null ? JSONObject.NULL : values[i]);
+        }
+        return json;
+    }
+
+    /**
+     * Reads an item back from the JSON form of {@link #toJson(Item)}. Values read from CSV are strings, which are converted too.
+     *
+     * @param json The record
+     * @return An item with the exported fields. Catalogue data that is not exported, such as tags, is taken from the registered item if
+     * there is one.
+     */
+    public static Item fromJson(JSONObject json) {
+        String name = json.getString("name");
+        Item metadata = Item.items.get(name);
+        Platform platform = Platform.fromId(json.getString("platform"));
+        Item item = metadata != null && metadata.initialized ? metadata.copyFor(platform, 0) : new Item(name, null, platform, 0);
+        item.lastRefreshed = json.optLong("refreshed");
+        item.buyPrice = json.isNull("buyPrice") ? null : json.optInt("buyPrice");
+        item.sellPrice = json.isNull("sellPrice") ? null : json.optInt("sellPrice");
+        item.profit = json.isNull("profit") ? null : json.optInt("profit");
+        item.avg48h = json.isNull("avg48h") ? null : json.optDouble("avg48h");
+        item.avg90d = json.isNull("avg90d") ? null : json.optDouble("avg90d");
+        item.orderCount = json.isNull("orderCount") ? null : json.optInt("orderCount");
+        item.trendName = json.isNull("trend") ? null : json.optString("trend");
+        if (!json.isNull("ducats")) item.ducats = json.optInt("ducats");
+        return item;
+    }
+
+    public static String toCsv(Item item) {
+        StringBuilder sb = new StringBuilder();
+        Object[] values = values(item);
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(',');
+            if (values[i] == null) continue;
+            String value = values[i].toString();
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+                sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                sb.append(value);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Object[] values(Item item) {
+        return new Object[]{item.name, item.getPlatform().id, item.lastRefreshed, item.buyPrice, item.sellPrice, item.profit, item.avg48h,
+                item.avg90d, item.orderCount, item.trendName, item.ducats};
+    }
+
+    /**
+     * Splits a CSV line written by {@link #toCsv(Item)} into its fields
+     */
+    static List<String> parseCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields;
+    }
+
+    /**
+     * Reads a line of either output format back into the JSON form of {@link #toJson(Item)}
+     *
+     * @param line A line of output that is not the CSV header
+     * @param csv  Whether the line is CSV rather than JSON
+     * @return The record
+     */
+    static JSONObject parseRecord(String line, boolean csv) {
+        if (!csv) {
+            return new JSONObject(line);
+        }
+        List<String> fields = parseCsv(line);
+        JSONObject json = new JSONObject();
+        for (int i = 0; i < COLUMNS.length && i < fields.size(); i++) {
+            json.put(COLUMNS[i], fields.get(i).isEmpty() ? JSONObject.NULL : fields.get(i));
+        }
+        return json;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Splits the memory caches may use between the subsystems that keep them, and tracks how much each one holds. Sizes are estimates of the
+ * retained heap with compressed references, close enough to keep the scanner well inside a small heap.
+ * <p>
+ * Every subsystem shows up in {@link Metrics} as <code>memory.&lt;name&gt;.bytes</code>, and bounded ones also as
+ * <code>memory.&lt;name&gt;.budget</code>.
+ */
+public class MemoryBudget {
+    /**
+     * The share of the maximum heap all caches together may use, unless the <code>warframe.cacheBytes</code> system property sets the total
+     */
+    public static final double HEAP_SHARE = 0.25;
+    private static final long total = Long.getLong("warframe.cacheBytes", (long) (Runtime.getRuntime().maxMemory() * HEAP_SHARE));
+    private static final Map<String, LongSupplier> subsystems = new ConcurrentHashMap<>();
+
+    static {
+        Metrics.gauge("memory.total.budget", () -> total);
+        Metrics.gauge("memory.total.bytes", MemoryBudget::getUsed);
+    }
+
+    /**
+     * @return How many bytes all caches together may use
+     */
+    public static long getTotal() {
+        return total;
+    }
+
+    /**
+     * @param fraction The fraction of the total a cache gets
+     * @return The budget of the cache in bytes
+     */
+    public static long share(double fraction) {
+        return (long) (total * fraction);
+    }
+
+    /**
+     * Reports the size of a subsystem
+     *
+     * @param name  The name of the subsystem
+     * @param bytes Estimates how many bytes it holds
+     */
+    public static void track(String name, LongSupplier bytes) {
+        subsystems.put(name, bytes);
+        Metrics.gauge("memory." + name + ".bytes", bytes);
+    }
+
+    /**
+     * Reports the size and budget of a bounded subsystem
+     */
+    public static void track(String name, LongSupplier bytes, long budget) {
+        track(name, bytes);
+        Metrics.gauge("memory." + name + ".budget", () -> budget);
+    }
+
+    /**
+     * @return The estimated bytes held by every tracked subsystem together
+     */
+    public static long getUsed() {
+        long used = 0;
+        for (LongSupplier bytes : subsystems.values()) {
+            used += bytes.getAsLong();
+        }
+        return used;
+    }
+
+    /**
+     * Estimates the size of a string and its characters, assuming they fit in one byte each
+     */
+    public static long sizeOf(String string) {
+        return string == null ? 0 : align(24) + align(16 + string.length());
+    }
+
+    public static long sizeOf(String[] strings) {
+        if (strings == null) return 0;
+        long size = align(16 + 4L * strings.length);
+        for (String string : strings) {
+            size += sizeOf(string);
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the size of an array of primitives or references
+     *
+     * @param length       How many elements the array holds
+     * @param elementBytes The size of one element, 4 for references
+     */
+    public static long sizeOfArray(long length, int elementBytes) {
+        return align(16 + length * elementBytes);
+    }
+
+    /**
+     * Estimates the size of a list of boxed doubles, such as cached statistics
+     */
+    public static long sizeOfDoubles(Collection<Double> values) {
+        //the list, its array and one Double per value
+        return align(24) + align(16 + 4L * values.size()) + 16L * values.size();
+    }
+
+    /**
+     * Estimates the size of an entry in a hash map, not counting its key and value
+     */
+    public static long entryOverhead() {
+        return 32 + 4;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
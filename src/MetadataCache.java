@@ -0,0 +1,169 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serial;
+import java.io.Serializable;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Long lived, persistent cache of item metadata (sets, tags, ducats, drop tables). Metadata barely ever changes, so it is fetched once from
+ * <code>/items/{url_name}</code> and reused until it expires, which lets order refreshes skip <code>include=item</code>.
+ */
+public class MetadataCache {
+    /**
+     * How long metadata is used before it is fetched again
+     */
+    public static final long TTL = TimeUnit.DAYS.toMillis(7);
+    private static final File storageFile = new File("src\\metadata.bin");
+    private static HashMap<String, Entry> entries = new HashMap<>();
+    private static final AtomicBoolean dirty = new AtomicBoolean(false);
+    static {
+        //kept whole, since it is the copy saved to disk. It only grows with the catalogue
+        MemoryBudget.track("metadata", MetadataCache::estimateSize);
+    }
+
+    private record Entry(String json, long fetched) implements Serializable {
+        @Serial
+        private static final long serialVersionUID = 1;
+    }
+
+    /**
+     * Gets the metadata of an item, fetching it if it is not cached or has expired. If fetching fails, expired metadata is used instead.
+     *
+     * @param name The name of the item
+     * @return The metadata of the item, in the same form as the <code>item</code> object of <code>include=item</code>
+     * @throws IOException if the metadata is not cached and cannot be fetched
+     */
+    public static JSONObject get(String name) throws IOException {
+        Entry entry;
+        synchronized (MetadataCache.class) {
+            entry = entries.get(name);
+        }
+        if (entry != null && System.currentTimeMillis() - entry.fetched < TTL) {
+            return new JSONObject(entry.json);
+        }
+        try {
+            JSONObject item = new JSONObject(MarketAPI.GET(new URL(MarketAPI.ItemUrl(name)), new MarketAPI.Request("accept", "application/json")))
+                    .getJSONObject("payload").getJSONObject("item");
+            synchronized (MetadataCache.class) {
+                entries.put(name, new Entry(item.toString(), System.currentTimeMillis()));
+            }
+            dirty.set(true);
+            return item;
+        } catch (IOException e) {
+            if (entry != null) {
+                return new JSONObject(entry.json);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Forgets the metadata of an item that was removed from the catalogue or renamed
+     *
+     * @param name The name of the item
+     */
+    public static void remove(String name) {
+        boolean removed;
+        synchronized (MetadataCache.class) {
+            removed = entries.remove(name) != null;
+        }
+        if (removed) dirty.set(true);
+    }
+
+    /**
+     * @return The estimated bytes held by the cache
+     */
+    public static synchronized long estimateSize() {
+        long size = 0;
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            size += MemoryBudget.entryOverhead() + MemoryBudget.sizeOf(entry.getKey()) + 24 + MemoryBudget.sizeOf(entry.getValue().json);
+        }
+        return size;
+    }
+
+    /**
+     * Loads the cache saved by a previous run, if there is one
+     */
+    @SuppressWarnings("unchecked")
+    public static void load() {
+        if (!storageFile.exists()) return;
+        try (ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new FileInputStream(storageFile)))) {
+            HashMap<String, Entry> loaded = (HashMap<String, Entry>) ois.readObject();
+            synchronized (MetadataCache.class) {
+                loaded.putAll(entries);
+                entries = loaded;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        registerSets();
+    }
+
+    /**
+     * Builds the set graph in {@link ItemSets} from the cached metadata. Items restored from a snapshot are already initialized, so their
+     * metadata is not read again, and this is the only way their sets are known.
+     */
+    private static void registerSets() {
+        List<String> cached;
+        synchronized (MetadataCache.class) {
+            cached = new ArrayList<>(entries.size());
+            for (Entry entry : entries.values()) {
+                cached.add(entry.json);
+            }
+        }
+        for (String json : cached) {
+            try {
+                JSONArray itemsInSet = new JSONObject(json).optJSONArray("items_in_set");
+                if (itemsInSet != null) ItemSets.register(itemsInSet);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Saves the cache if anything was fetched since it was last saved
+     */
+    public static void saveIfDirty() {
+        if (!dirty.getAndSet(false)) return;
+        HashMap<String, Entry> copy;
+        synchronized (MetadataCache.class) {
+            copy = new HashMap<>(entries);
+        }
+        try {
+            Utils.writeObjectAtomically(storageFile, copy);
+        } catch (IOException e) {
+            dirty.set(true);
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Named gauges that report how the scanner is doing, such as how many bytes a cache holds. A gauge is read every time it is reported, so
+ * it always shows the current value.
+ * <p>
+ * The window only prints the report when the <code>warframe.metricsInterval</code> system property sets how many seconds apart.
+ */
+public class Metrics {
+    private static final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService reporter;
+
+    /**
+     * Adds a gauge, replacing any gauge with the same name
+     *
+     * @param name  The name of the gauge, such as <code>memory.statistics.bytes</code>
+     * @param value Reads the value of the gauge. Called from any thread.
+     */
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public static void remove(String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * @return The current value of every gauge, sorted by name
+     */
+    public static Map<String, Long> snapshot() {
+        TreeMap<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        return values;
+    }
+
+    /**
+     * @return Every gauge on its own line, as <code>name = value</code>
+     */
+    public static String report() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> value : snapshot().entrySet()) {
+            builder.append(value.getKey()).append(" = ").append(value.getValue()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Prints every gauge in the background every interval
+     *
+     * @param interval How many seconds to wait between reports
+     */
+    public static synchronized void startReporting(long interval) {
+        if (reporter != null) return;
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleWithFixedDelay(() -> System.out.print(report()), interval, interval, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopReporting() {
+        if (reporter == null) return;
+        reporter.shutdownNow();
+        reporter = null;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Keeps a live ranking of the best <code>k</code> items by one metric. The top <code>k</code> are kept in a min-heap and everything else in a
+ * max-heap, both indexed by item key, so an item whose score changes is re-ranked in O(log n) without looking at any other item.
+ */
+public class OpportunityRanking implements ItemUpdateListener {
+    /**
+     * The metrics items can be ranked by. A metric returns <code>NaN</code> for items it cannot score yet.
+     */
+    public enum Metric {
+        PROFIT(item -> item.profit == null ? Double.NaN : item.profit),
+        ROI(item -> item.profit == null || Utils.notNull(item.sellPrice, 0) <= 0 ? Double.NaN : item.profit / (double) item.sellPrice),
+        DUCATS_PER_PLAT(item -> item.ducats == null || item.ducats == 0 ? Double.NaN : item.calculateDucatsPerPlat());
+
+        private final ToDoubleFunction<Item> score;
+
+        Metric(ToDoubleFunction<Item> score) {
+            this.score = score;
+        }
+
+        public double score(Item item) {
+            return score.applyAsDouble(item);
+        }
+    }
+
+    /**
+     * Notified when an item enters or leaves the top <code>k</code>
+     */
+    public interface Listener {
+        void entered(Item item, double score);
+
+        void left(Item item, double score);
+    }
+
+    private final Metric metric;
+    private final int k;
+    //the top k, with the worst of them on top
+    private final IndexedHeap top = new IndexedHeap(false);
+    //everything else, with the best of them on top
+    private final IndexedHeap rest = new IndexedHeap(true);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public OpportunityRanking(Metric metric, int k) {
+        this.metric = metric;
+        this.k = k;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void itemUpdated(Item item) {
+        update(item);
+    }
+
+    /**
+     * Re-ranks an item with its current score. Items that cannot be scored are dropped from the ranking.
+     *
+     * @param item The item whose data changed
+     */
+    public synchronized void update(Item item) {
+        String key = item.getKey();
+        double score = metric.score(item);
+        if (Double.isNaN(score)) {
+            if (top.contains(key)) {
+                Entry removed = top.remove(key);
+                fireLeft(removed);
+            } else if (rest.contains(key)) {
+                rest.remove(key);
+            }
+        } else if (top.contains(key)) {
+            top.update(key, item, score);
+        } else if (rest.contains(key)) {
+            rest.update(key, item, score);
+        } else {
+            rest.add(new Entry(key, item, score));
+        }
+        rebalance();
+    }
+
+    /**
+     * Drops an item that is no longer in the catalogue from the ranking
+     */
+    @Override
+    public synchronized void itemRemoved(String key) {
+        if (top.contains(key)) {
+            fireLeft(top.remove(key));
+        } else if (rest.contains(key)) {
+            rest.remove(key);
+        }
+        rebalance();
+    }
+
+    private void rebalance() {
+        while (top.size() < k && rest.size() > 0) {
+            Entry promoted = rest.poll();
+            top.add(promoted);
+            fireEntered(promoted);
+        }
+        while (rest.size() > 0 && top.size() > 0 && rest.peek().score > top.peek().score) {
+            Entry demoted = top.poll();
+            Entry promoted = rest.poll();
+            top.add(promoted);
+            rest.add(demoted);
+            fireLeft(demoted);
+            fireEntered(promoted);
+        }
+    }
+
+    private void fireEntered(Entry entry) {
+        for (Listener listener : listeners) {
+            listener.entered(entry.item, entry.score);
+        }
+    }
+
+    private void fireLeft(Entry entry) {
+        for (Listener listener : listeners) {
+            listener.left(entry.item, entry.score);
+        }
+    }
+
+    /**
+     * Gets the current top <code>k</code>, best first. This sorts only the top <code>k</code>, not every ranked item.
+     *
+     * @return The best items
+     */
+    public synchronized List<Item> getTop() {
+        List<Entry> entries = new ArrayList<>(top.entries());
+        entries.sort((a, b) -> Double.compare(b.score, a.score));
+        List<Item> items = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            items.add(entry.item);
+        }
+        return items;
+    }
+
+    public synchronized boolean isInTop(Item item) {
+        return top.contains(item.getKey());
+    }
+
+    public Metric getMetric() {
+        return metric;
+    }
+
+    private static final class Entry {
+        final String key;
+        Item item;
+        double score;
+        int index;
+
+        Entry(String key, Item item, double score) {
+            this.key = key;
+            this.item = item;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Binary heap of entries that also tracks where every key is, so any entry can be updated or removed in O(log n)
+     */
+    private static final class IndexedHeap {
+        private final ArrayList<Entry> heap = new ArrayList<>();
+        private final HashMap<String, Entry> index = new HashMap<>();
+        private final boolean max;
+
+        IndexedHeap(boolean max) {
+            this.max = max;
+        }
+
+        int size() {
+            return heap.size();
+        }
+
+        boolean contains(String key) {
+            return index.containsKey(key);
+        }
+
+        List<Entry> entries() {
+            return heap;
+        }
+
+        Entry peek() {
+            return heap.get(0);
+        }
+
+        void add(Entry entry) {
+            entry.index = heap.size();
+            heap.add(entry);
+            index.put(entry.key, entry);
+            siftUp(entry.index);
+        }
+
+        Entry poll() {
+            return removeAt(0);
+        }
+
+        Entry remove(String key) {
+            return removeAt(index.get(key).index);
+        }
+
+        void update(String key, Item item, double score) {
+            Entry entry = index.get(key);
+            entry.item = item;
+            entry.score = score;
+            siftUp(entry.index);
+            siftDown(entry.index);
+        }
+
+        private Entry removeAt(int i) {
+            Entry removed = heap.get(i);
+            Entry last = heap.remove(heap.size() - 1);
+            index.remove(removed.key);
+            if (last != removed) {
+                last.index = i;
+                heap.set(i, last);
+                siftUp(i);
+                siftDown(last.index);
+            }
+            return removed;
+        }
+
+        //true if a belongs above b
+        private boolean before(Entry a, Entry b) {
+            return max ? a.score > b.score : a.score < b.score;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!before(heap.get(i), heap.get(parent))) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = i * 2 + 1;
+                int right = left + 1;
+                int best = i;
+                if (left < heap.size() && before(heap.get(left), heap.get(best))) best = left;
+                if (right < heap.size() && before(heap.get(right), heap.get(best))) best = right;
+                if (best == i) break;
+                swap(i, best);
+                i = best;
+            }
+        }
+
+        private void swap(int a, int b) {
+            Entry ea = heap.get(a);
+            Entry eb = heap.get(b);
+            heap.set(a, eb);
+            heap.set(b, ea);
+            ea.index = b;
+            eb.index = a;
+        }
+    }
+}
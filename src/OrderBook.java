@@ -0,0 +1,230 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * Every visible rank 0 order of an item, kept in primitive arrays sorted best price first: sell orders (asks) from cheapest, buy orders
+ * (bids) from most expensive. The book cannot be changed once built, and its queries walk the arrays without allocating, so they can be
+ * run for every item in the table.
+ * <p>
+ * Every query can be limited to orders whose owners are online, since those are the only ones that can be traded with right away.
+ */
+public class OrderBook {
+    public static final int NO_PRICE = -1;
+
+    private final Side asks;
+    private final Side bids;
+
+    /**
+     * One side of the book. The arrays are parallel and sorted best price first.
+     */
+    private static final class Side {
+        final int[] price;
+        final int[] quantity;
+        final int[] reputation;
+        final boolean[] online;
+        final Structure.UserShort[] user;
+
+        Side(int size) {
+            price = new int[size];
+            quantity = new int[size];
+            reputation = new int[size];
+            online = new boolean[size];
+            user = new Structure.UserShort[size];
+        }
+    }
+
+    private OrderBook(Side asks, Side bids) {
+        this.asks = asks;
+        this.bids = bids;
+    }
+
+    /**
+     * Builds the book of an item
+     *
+     * @param json The payload of an item's orders
+     * @return The book
+     */
+    public static OrderBook of(JSONObject json) {
+        JSONArray orders = json.getJSONArray("orders");
+        //price in the high half and index in the low half, so sorting the longs sorts the orders by price
+        long[] sells = new long[orders.length()];
+        long[] buys = new long[orders.length()];
+        int sellCount = 0;
+        int buyCount = 0;
+        for (int i = 0; i < orders.length(); i++) {
+            JSONObject order = orders.getJSONObject(i);
+            if (!order.optBoolean("visible", true) || Structure.getLevel(order) != 0) continue;
+            long key = (long) order.getInt("platinum") << 32 | i;
+            if (order.getString("order_type").equals("sell")) {
+                sells[sellCount++] = key;
+            } else {
+                //negated so the most expensive bid comes first
+                buys[buyCount++] = -((long) order.getInt("platinum") << 32) | i;
+            }
+        }
+        return new OrderBook(side(orders, sells, sellCount), side(orders, buys, buyCount));
+    }
+
+    private static Side side(JSONArray orders, long[] keys, int count) {
+        Arrays.sort(keys, 0, count);
+        Side side = new Side(count);
+        for (int i = 0; i < count; i++) {
+            JSONObject order = orders.getJSONObject((int) (keys[i] & 0xFFFFFFFFL));
+            Structure.UserShort user = UserRegistry.intern(order.getJSONObject("user"));
+            side.price[i] = order.getInt("platinum");
+            side.quantity[i] = order.getInt("quantity");
+            //the status and reputation when the book was built, since the shared user changes with later books
+            side.reputation[i] = user.reputation;
+            side.online[i] = user.online;
+            side.user[i] = user;
+        }
+        return side;
+    }
+
+    /**
+     * @return The lowest price an item is sold for, or {@link #NO_PRICE} if nobody is selling
+     */
+    public int getBestAsk(boolean onlineOnly) {
+        return best(asks, onlineOnly);
+    }
+
+    /**
+     * @return The highest price an item is bought for, or {@link #NO_PRICE} if nobody is buying
+     */
+    public int getBestBid(boolean onlineOnly) {
+        return best(bids, onlineOnly);
+    }
+
+    private static int best(Side side, boolean onlineOnly) {
+        for (int i = 0; i < side.price.length; i++) {
+            if (!onlineOnly || side.online[i]) return side.price[i];
+        }
+        return NO_PRICE;
+    }
+
+    /**
+     * @return The lowest sell price minus the highest buy price, or NaN if either side is empty
+     */
+    public double getSpread(boolean onlineOnly) {
+        int ask = getBestAsk(onlineOnly);
+        int bid = getBestBid(onlineOnly);
+        return ask == NO_PRICE || bid == NO_PRICE ? Double.NaN : ask - bid;
+    }
+
+    /**
+     * Gets how much buying a number of units from the cheapest sellers would cost
+     *
+     * @param units How many to buy
+     * @return The total price, or -1 if not enough are for sale
+     */
+    public long costToBuy(int units, boolean onlineOnly) {
+        return fill(asks, units, onlineOnly);
+    }
+
+    /**
+     * Gets how much selling a number of units to the highest buyers would make
+     *
+     * @param units How many to sell
+     * @return The total price, or -1 if not enough are wanted
+     */
+    public long proceedsFromSelling(int units, boolean onlineOnly) {
+        return fill(bids, units, onlineOnly);
+    }
+
+    private static long fill(Side side, int units, boolean onlineOnly) {
+        long total = 0;
+        int remaining = units;
+        for (int i = 0; i < side.price.length && remaining > 0; i++) {
+            if (onlineOnly && !side.online[i]) continue;
+            int filled = Math.min(remaining, side.quantity[i]);
+            total += (long) filled * side.price[i];
+            remaining -= filled;
+        }
+        return remaining > 0 ? -1 : total;
+    }
+
+    /**
+     * Gets how many units are for sale within a fraction of the lowest price, such as 0.1 for everything at most 10% more expensive
+     */
+    public int getAskDepthWithin(double fraction, boolean onlineOnly) {
+        int best = getBestAsk(onlineOnly);
+        return best == NO_PRICE ? 0 : depth(asks, best * (1 + fraction), true, onlineOnly);
+    }
+
+    /**
+     * Gets how many units are wanted within a fraction of the highest price, such as 0.1 for everything at most 10% cheaper
+     */
+    public int getBidDepthWithin(double fraction, boolean onlineOnly) {
+        int best = getBestBid(onlineOnly);
+        return best == NO_PRICE ? 0 : depth(bids, best * (1 - fraction), false, onlineOnly);
+    }
+
+    private static int depth(Side side, double limit, boolean ascending, boolean onlineOnly) {
+        int units = 0;
+        for (int i = 0; i < side.price.length; i++) {
+            //sorted best first, so the first order past the limit ends the walk
+            if (ascending ? side.price[i] > limit : side.price[i] < limit) break;
+            if (!onlineOnly || side.online[i]) units += side.quantity[i];
+        }
+        return units;
+    }
+
+    public int getAskPrice(int index) {
+        return asks.price[index];
+    }
+
+    public int getAskQuantity(int index) {
+        return asks.quantity[index];
+    }
+
+    public boolean isAskOnline(int index) {
+        return asks.online[index];
+    }
+
+    public Structure.UserShort getAskUser(int index) {
+        return asks.user[index];
+    }
+
+    public int getAskCount() {
+        return asks.price.length;
+    }
+
+    public int getBidCount() {
+        return bids.price.length;
+    }
+
+    /**
+     * Estimates the bytes held by this book. The users are shared between books, so they are left to {@link UserRegistry}.
+     */
+    public long estimateSize() {
+        return 24 + estimateSize(asks) + estimateSize(bids);
+    }
+
+    private static long estimateSize(Side side) {
+        int n = side.price.length;
+        return 32 + 3 * MemoryBudget.sizeOfArray(n, 4) + MemoryBudget.sizeOfArray(n, 1) + MemoryBudget.sizeOfArray(n, 4);
+    }
+
+    @Override
+    public String toString() {
+        return "OrderBook{asks=" + getAskCount() + ", bids=" + getBidCount() + ", bestAsk=" + getBestAsk(false) + ", bestBid=" + getBestBid(false) + "}";
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The platforms warframe.market keeps separate markets for
+ */
+public enum Platform {
+    PC("pc", "PC"),
+    PS4("ps4", "PlayStation"),
+    XBOX("xbox", "Xbox"),
+    SWITCH("switch", "Switch");
+
+    /**
+     * The identifier the API expects in the <code>Platform</code> header
+     */
+    public final String id;
+    public final String displayName;
+
+    Platform(String id, String displayName) {
+        this.id = id;
+        this.displayName = displayName;
+    }
+
+    /**
+     * Gets a platform from its API identifier
+     *
+     * @param id The identifier, such as <code>pc</code> or <code>ps4</code>
+     * @return The matching platform
+     * @throws IllegalArgumentException if no platform has that identifier
+     */
+    public static Platform fromId(String id) {
+        for (Platform platform : values()) {
+            if (platform.id.equalsIgnoreCase(id.trim())) {
+                return platform;
+            }
+        }
+        throw new IllegalArgumentException("Unknown platform: " + id);
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
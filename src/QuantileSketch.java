@@ -0,0 +1,284 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * KLL quantile sketch of prices. It keeps a bounded number of samples however many prices are added, and answers quantiles such as the
+ * median to within about 2% of the rank. Sketches can be merged, so the sketch of several refreshes or platforms is the merge of theirs,
+ * and {@link #halved()} lets older refreshes count for less so a sketch follows the market rather than all of its history.
+ * <p>
+ * Samples are kept in levels. A sample on level h stands for 2<sup>h</sup> prices. When a level is full it is sorted and every other
+ * sample, starting at a random one of the first two, moves up a level with double the weight. Lower levels hold fewer samples than higher
+ * ones, which is what keeps the error bounded.
+ */
+@SuppressWarnings("SerializableHasSerializationMethods")
+public class QuantileSketch implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1;
+    //about 2% rank error in around 300 samples, which is plenty for prices and small enough to keep one per item and side
+    public static final int DEFAULT_K = 100;
+    private static final double LEVEL_RATIO = 2 / 3d;
+    private static final int MIN_CAPACITY = 8;
+
+    private final int k;
+    //prices are whole numbers of platinum, which floats hold exactly, so samples take half the space of doubles
+    private float[][] levels = {new float[MIN_CAPACITY]};
+    private int[] sizes = {0};
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    //the samples sorted with their cumulative weights, built the first time a quantile is asked for after a change. Volatile since the
+    //table and the refresh threads may both ask for quantiles of a sketch that is no longer changing
+    private transient volatile double[] sortedValues;
+    private transient volatile long[] cumulativeWeights;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Constructor
+     * @param k The size of the top level. Larger sketches are more accurate and use more memory.
+     */
+    public QuantileSketch(int k) {
+        this.k = k;
+    }
+
+    /**
+     * @return A copy of this sketch that can be changed without changing this one
+     */
+    public QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(k);
+        copy.levels = new float[levels.length][];
+        for (int h = 0; h < levels.length; h++) {
+            copy.levels[h] = levels[h].clone();
+        }
+        copy.sizes = sizes.clone();
+        copy.count = count;
+        copy.min = min;
+        copy.max = max;
+        return copy;
+    }
+
+    /**
+     * Gets a copy of this sketch in which every price counts half as much. Merging each refresh into the halved sketch of the ones before
+     * makes a refresh n refreshes old count 2<sup>-n</sup> as much as the newest, so old prices fade out instead of piling up. Samples on
+     * the bottom level cannot be split in half, so each of them is kept or dropped with even odds.
+     *
+     * @return The halved copy
+     */
+    public QuantileSketch halved() {
+        QuantileSketch copy = new QuantileSketch(k);
+        if (levels.length > 1) {
+            copy.levels = new float[levels.length - 1][];
+            copy.sizes = new int[levels.length - 1];
+            for (int h = 1; h < levels.length; h++) {
+                copy.levels[h - 1] = levels[h].clone();
+                copy.sizes[h - 1] = sizes[h];
+            }
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < sizes[0]; i++) {
+            if (random.nextBoolean()) copy.add(0, levels[0][i]);
+        }
+        //the extremes may have been dropped, so they are taken from the samples that are left
+        for (int h = 0; h < copy.levels.length; h++) {
+            for (int i = 0; i < copy.sizes[h]; i++) {
+                double value = copy.levels[h][i];
+                if (copy.count == 0 || value < copy.min) copy.min = value;
+                if (copy.count == 0 || value > copy.max) copy.max = value;
+                copy.count += 1L << h;
+            }
+        }
+        copy.compress();
+        return copy;
+    }
+
+    public void update(double value) {
+        if (Double.isNaN(value)) return;
+        if (count == 0 || value < min) min = value;
+        if (count == 0 || value > max) max = value;
+        count++;
+        add(0, value);
+        compress();
+    }
+
+    /**
+     * Adds every sample of another sketch to this one
+     *
+     * @param other The other sketch. It is not changed.
+     */
+    public void merge(QuantileSketch other) {
+        if (other == null || other.count == 0) return;
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                add(h, other.levels[h][i]);
+            }
+        }
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+        compress();
+    }
+
+    /**
+     * Merges two sketches into a new one, for example the same item on two platforms
+     *
+     * @return The merged sketch, or null if both are null
+     */
+    public static QuantileSketch merge(QuantileSketch a, QuantileSketch b) {
+        if (a == null) return b == null ? null : b.copy();
+        QuantileSketch merged = a.copy();
+        merged.merge(b);
+        return merged;
+    }
+
+    /**
+     * @return How many prices have been added to this sketch, less those that were halved away
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Gets an estimated quantile
+     *
+     * @param fraction The quantile, from 0 to 1. 0.5 is the median.
+     * @return The estimate, or NaN if the sketch is empty
+     */
+    public double getQuantile(double fraction) {
+        if (count == 0) return Double.NaN;
+        if (fraction <= 0) return min;
+        if (fraction >= 1) return max;
+        double[] values = sortedValues;
+        long[] weights = cumulativeWeights;
+        if (values == null) {
+            sort();
+            values = sortedValues;
+            weights = cumulativeWeights;
+        }
+        long rank = (long) Math.ceil(fraction * weights[weights.length - 1]);
+        int index = Arrays.binarySearch(weights, rank);
+        return values[index >= 0 ? index : -index - 1];
+    }
+
+    private void sort() {
+        int total = 0;
+        for (int size : sizes) total += size;
+        double[] values = new double[total];
+        long[] weights = new long[total];
+        int n = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = levels[h][i];
+                weights[n++] = 1L << h;
+            }
+        }
+        //sort the samples by value, then add up their weights in that order
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        double[] sorted = new double[total];
+        long[] cumulative = new long[total];
+        long sum = 0;
+        for (int i = 0; i < total; i++) {
+            sorted[i] = values[order[i]];
+            sum += weights[order[i]];
+            cumulative[i] = sum;
+        }
+        cumulativeWeights = cumulative;
+        sortedValues = sorted;
+    }
+
+    private int capacity(int level) {
+        int depth = levels.length - 1 - level;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(LEVEL_RATIO, depth)));
+    }
+
+    private void add(int level, double value) {
+        while (level >= levels.length) {
+            levels = Arrays.copyOf(levels, levels.length + 1);
+            levels[levels.length - 1] = new float[MIN_CAPACITY];
+            sizes = Arrays.copyOf(sizes, sizes.length + 1);
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        }
+        levels[level][sizes[level]++] = (float) value;
+        sortedValues = null;
+        cumulativeWeights = null;
+    }
+
+    /**
+     * Halves every level that is over its capacity into the level above, starting from the bottom
+     */
+    private void compress() {
+        //a new top level lowers the capacity of every level below it, so keep going until every level fits
+        boolean compressed = true;
+        while (compressed) {
+            compressed = false;
+            for (int h = 0; h < levels.length; h++) {
+                if (sizes[h] >= capacity(h)) {
+                    compress(h);
+                    compressed = true;
+                }
+            }
+        }
+    }
+
+    private void compress(int h) {
+        float[] level = levels[h];
+        int size = sizes[h];
+        Arrays.sort(level, 0, size);
+        //an odd sample out stays on this level so no weight is lost
+        int kept = size % 2;
+        int offset = kept + (ThreadLocalRandom.current().nextBoolean() ? 1 : 0);
+        for (int i = offset; i < size; i += 2) {
+            add(h + 1, level[i]);
+        }
+        //a merge can grow a level well past its capacity, so shrink it back rather than keep the space around
+        levels[h] = Arrays.copyOf(level, Math.max(MIN_CAPACITY, Math.min(level.length, capacity(h))));
+        sizes[h] = kept;
+    }
+
+    /**
+     * Estimates the bytes held by this sketch, including its sorted samples if they have been built
+     */
+    public long estimateSize() {
+        long size = 64 + MemoryBudget.sizeOfArray(levels.length, 4) + MemoryBudget.sizeOfArray(sizes.length, 4);
+        for (float[] level : levels) {
+            size += MemoryBudget.sizeOfArray(level.length, 4);
+        }
+        double[] values = sortedValues;
+        if (values != null) {
+            size += 2 * MemoryBudget.sizeOfArray(values.length, 8);
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "QuantileSketch{count=" + count + ", p10=" + getQuantile(0.1) + ", p50=" + getQuantile(0.5) + ", p90=" + getQuantile(0.9) + "}";
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feedback driven rate controller for API requests. The request rate grows additively while responses are healthy and is cut
+ * multiplicatively when the API throttles us (HTTP 429/503) or when latency starts climbing, so requests are sent close to the highest rate
+ * the API currently allows.
+ */
+public class RateLimiter {
+    private final double minRate;
+    private final double maxRate;
+    private final double increase;
+    private final double decrease;
+    //requests per second
+    private double rate;
+    private long nextPermit = System.nanoTime();
+    private long blockedUntil = System.nanoTime();
+    private long lastDecrease = System.nanoTime() - TimeUnit.SECONDS.toNanos(1);
+    private double baselineLatency = -1;
+
+    /**
+     * Constructor
+     * @param initialRate The starting rate, in requests per second
+     * @param minRate     The lowest rate the controller will back off to
+     * @param maxRate     The highest rate the controller will probe up to
+     * @param increase    How many requests per second are added for every second of healthy responses
+     * @param decrease    The factor the rate is multiplied by when backing off
+     */
+    public RateLimiter(double initialRate, double minRate, double maxRate, double increase, double decrease) {
+        this.rate = initialRate;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increase = increase;
+        this.decrease = decrease;
+    }
+
+    /**
+     * Blocks until the caller is allowed to send another request.
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedIOException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, Math.max(nextPermit, blockedUntil));
+            nextPermit = slot + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            wait = slot - now;
+        }
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a request permit");
+            }
+        }
+    }
+
+    /**
+     * Reports a healthy response. The rate is raised additively unless the latency suggests the API is starting to struggle.
+     * @param latencyNanos How long the API took to respond
+     */
+    public synchronized void onSuccess(long latencyNanos) {
+        if (baselineLatency < 0) {
+            baselineLatency = latencyNanos;
+        }
+        if (latencyNanos > baselineLatency * 3) {
+            backOff();
+        } else {
+            rate = Math.min(maxRate, rate + increase / rate);
+        }
+        //the baseline follows the latency slowly so a single slow response does not move it
+        baselineLatency = baselineLatency * 0.95 + latencyNanos * 0.05;
+    }
+
+    /**
+     * Reports that the API throttled us. The rate is cut multiplicatively and no request is let through until the server's
+     * <code>Retry-After</code> delay has passed.
+     * @param retryAfterMillis The delay requested by the server, or 0 if none was given
+     */
+    public synchronized void onThrottled(long retryAfterMillis) {
+        backOff();
+        if (retryAfterMillis > 0) {
+            blockedUntil = Math.max(blockedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+        }
+    }
+
+    private void backOff() {
+        long now = System.nanoTime();
+        //only back off once per interval, otherwise a burst of failures from requests already in flight would collapse the rate
+        if (now - lastDecrease < TimeUnit.SECONDS.toNanos(1)) {
+            return;
+        }
+        lastDecrease = now;
+        rate = Math.max(minRate, rate * decrease);
+    }
+
+    /**
+     * @return The current rate, in requests per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+}
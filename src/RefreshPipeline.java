@@ -0,0 +1,254 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Refreshes items in stages, each with its own threads, connected by bounded queues:
+ * <ol>
+ *     <li><b>fetch</b> reads the orders, statistics and metadata of items from the API, or takes them from the caches,</li>
+ *     <li><b>compute</b> parses them and works out prices, trends and order books, without reading anything from the API,</li>
+ *     <li><b>publish</b> shows the items in the table and tells the listeners, many batches at a time.</li>
+ * </ol>
+ * A stage that falls behind fills the queue in front of it, which blocks the stage before, and finally {@link #submit(List, DelayedThreadQueue)},
+ * so the scheduler never runs ahead of the slowest stage. How full each queue is and how many of each stage's threads are busy is reported
+ * through {@link Metrics} as <code>pipeline.&lt;stage&gt;.queued</code> and <code>pipeline.&lt;stage&gt;.busy</code>.
+ * <p>
+ * Items that fail are pushed back on the queue they came from, like items that are done.
+ */
+public class RefreshPipeline {
+    //the most batches published in one go
+    private static final int MAX_PUBLISH_BATCH = 32;
+
+    private final Application app;
+    private final Stage fetch;
+    private final Stage compute;
+    private final Stage publish;
+    private volatile boolean closed;
+
+    /**
+     * Items that are refreshed and published together, such as a set and its parts
+     */
+    private static final class Job {
+        final List<Item> items;
+        final DelayedThreadQueue source;
+        final List<Fetched> fetched = new ArrayList<>();
+        final List<Item> refreshed = new ArrayList<>();
+
+        Job(List<Item> items, DelayedThreadQueue source) {
+            this.items = items;
+            this.source = source;
+        }
+    }
+
+    /**
+     * @param metadata   The catalogue data of the item, or null if the item already has it
+     * @param statistics The statistics of the item, or null if they were cached
+     * @param cached     The cached statistics of the item, or null if they were read
+     */
+    private record Fetched(Item item, Item metadata, String orders, long time, String statistics, Map<String, ArrayList<Double>> cached) {}
+
+    private interface Task {
+        void run(Job job) throws InterruptedException;
+    }
+
+    private final class Stage {
+        final String name;
+        final BlockingQueue<Job> input;
+        final AtomicInteger busy = new AtomicInteger();
+        final AtomicLong processed = new AtomicLong();
+        final List<Thread> threads = new ArrayList<>();
+
+        Stage(String name, int capacity) {
+            this.name = name;
+            this.input = new ArrayBlockingQueue<>(capacity);
+            Metrics.gauge("pipeline." + name + ".queued", input::size);
+            Metrics.gauge("pipeline." + name + ".capacity", () -> capacity);
+            Metrics.gauge("pipeline." + name + ".busy", busy::get);
+            Metrics.gauge("pipeline." + name + ".processed", processed::get);
+        }
+
+        void start(int parallelism, Task task) {
+            Metrics.gauge("pipeline." + name + ".threads", () -> parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                Thread thread = new Thread(() -> work(task), "Refresh " + name + " " + i);
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        private void work(Task task) {
+            while (!closed) {
+                Job job;
+                try {
+                    job = input.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                busy.incrementAndGet();
+                try {
+                    task.run(job);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                } finally {
+                    busy.decrementAndGet();
+                    processed.incrementAndGet();
+                }
+            }
+        }
+
+        void stop() {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Creates a pipeline with four fetch threads and a compute thread for every processor but one
+     */
+    public RefreshPipeline(Application app) {
+        this(app, 4, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Constructor
+     * @param app            The application items are published to
+     * @param fetchThreads   How many items are read from the API at once. The rate limiter still paces the requests
+     * @param computeThreads How many items are parsed and computed at once
+     */
+    public RefreshPipeline(Application app, int fetchThreads, int computeThreads) {
+        this.app = app;
+        fetch = new Stage("fetch", fetchThreads * 2);
+        compute = new Stage("compute", computeThreads * 4);
+        publish = new Stage("publish", MAX_PUBLISH_BATCH * 2);
+        fetch.start(fetchThreads, this::fetch);
+        compute.start(computeThreads, this::compute);
+        publish.start(1, this::publish);
+    }
+
+    /**
+     * Queues items to be refreshed together, waiting while the pipeline is full
+     * @param items  The items
+     * @param source The queue the items are pushed back on once they are done
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void submit(List<Item> items, DelayedThreadQueue source) throws InterruptedException {
+        fetch.input.put(new Job(items, source));
+    }
+
+    private void fetch(Job job) throws InterruptedException {
+        long pause = 0;
+        for (Item item : job.items) {
+            if (pause > 0) {
+                requeue(job.source, item);
+                continue;
+            }
+            String name = item.name;
+            Platform platform = item.getPlatform();
+            try {
+                //everything compute needs is taken here, so an eviction in between cannot send compute to the API
+                Item metadata = item.initialized ? null : DelayedThreadQueue.getMetadata(name);
+                Map<String, ArrayList<Double>> cached = MarketAPI.getCachedStatistics(name, platform,
+                        DelayedThreadQueue.getMaxRank(item.initialized ? item : metadata));
+                String orders = MarketAPI.fetchOrders(name, platform);
+                long time = System.currentTimeMillis();
+                String statistics = cached == null ? MarketAPI.fetchStatistics(name, platform) : null;
+                job.fetched.add(new Fetched(item, metadata, orders, time, statistics, cached));
+            } catch (CircuitBreaker.OpenException e) {
+                //the API is failing, so this stage waits for it and the queues in front of it fill up
+                System.err.println(e.getMessage());
+                pause = Math.max(1, e.retryAfterMillis);
+                requeue(job.source, item);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                requeue(job.source, item);
+            }
+        }
+        if (!job.fetched.isEmpty()) {
+            compute.input.put(job);
+        }
+        if (pause > 0) {
+            Thread.sleep(pause);
+        }
+    }
+
+    private void compute(Job job) throws InterruptedException {
+        for (Fetched fetched : job.fetched) {
+            Item item = fetched.item;
+            try {
+                Map<String, ArrayList<Double>> statistics = fetched.cached;
+                if (fetched.statistics != null) {
+                    statistics = MarketAPI.cacheStatistics(item.name, item.getPlatform(), MarketAPI.parseStatistics(fetched.statistics));
+                }
+                job.refreshed.add(DelayedThreadQueue.refresh(item, fetched.metadata, new JSONObject(fetched.orders), fetched.time, statistics,
+                        fetched.statistics != null));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                requeue(job.source, item);
+            }
+        }
+        if (!job.refreshed.isEmpty()) {
+            publish.input.put(job);
+        }
+    }
+
+    private void publish(Job job) {
+        List<Job> jobs = new ArrayList<>();
+        jobs.add(job);
+        publish.input.drainTo(jobs, MAX_PUBLISH_BATCH - 1);
+        List<Item> items = new ArrayList<>();
+        for (Job next : jobs) {
+            items.addAll(next.refreshed);
+        }
+        app.publish(items);
+        for (Job next : jobs) {
+            for (Item item : next.refreshed) {
+                requeue(next.source, item);
+            }
+        }
+    }
+
+    /**
+     * Pushes the row of an item back on the queue it came from, unless the item was removed from the catalogue. If the row was renamed
+     * while the item was being refreshed, the renamed row is pushed instead.
+     */
+    private void requeue(DelayedThreadQueue source, Item item) {
+        Item row = app.getListedRow(item.location);
+        if (row != null) {
+            source.pushTask(row);
+        }
+    }
+
+    public void shutdown() {
+        closed = true;
+        fetch.stop();
+        compute.stop();
+        publish.stop();
+    }
+}
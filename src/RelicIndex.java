@@ -0,0 +1,126 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reverse index from relics to the prime parts they drop. Items only know which relics they drop from, so this lets a relic find its parts
+ * and a part find its relics without scanning every item.
+ */
+public class RelicIndex {
+    /**
+     * How rare a drop is in its relic, with the chance of getting it at each refinement level (intact, exceptional, flawless, radiant)
+     */
+    public enum Rarity {
+        COMMON(0.2533, 0.2333, 0.20, 0.1667),
+        UNCOMMON(0.11, 0.13, 0.17, 0.20),
+        RARE(0.02, 0.04, 0.06, 0.10);
+
+        private final double[] chances;
+
+        Rarity(double... chances) {
+            this.chances = chances;
+        }
+
+        /**
+         * @param refinement The refinement level, from 0 (intact) to 3 (radiant)
+         * @return The chance of this drop at that refinement
+         */
+        public double getChance(int refinement) {
+            return chances[refinement];
+        }
+
+        /**
+         * Parses the rarity the API gives a drop, falling back to the ducat value of the part since every rarity has its own ducat values.
+         *
+         * @param rarity The rarity from the API, or null if there was none
+         * @param ducats The ducat value of the part
+         * @return The rarity
+         */
+        public static Rarity of(String rarity, Integer ducats) {
+            if (rarity != null) {
+                switch (rarity.toLowerCase()) {
+                    case "common" -> {
+                        return COMMON;
+                    }
+                    case "uncommon" -> {
+                        return UNCOMMON;
+                    }
+                    case "rare" -> {
+                        return RARE;
+                    }
+                }
+            }
+            int value = Utils.notNull(ducats, 0);
+            return value >= 100 ? RARE : value >= 45 ? UNCOMMON : COMMON;
+        }
+    }
+
+    /**
+     * A part dropped by a relic
+     */
+    public record Drop(String part, Rarity rarity) {}
+
+    public static final int REFINEMENTS = 4;
+
+    //relic -> the parts it drops
+    private static final HashMap<String, List<Drop>> drops = new HashMap<>();
+    //part -> the relics that drop it
+    private static final HashMap<String, Set<String>> relics = new HashMap<>();
+
+    public static synchronized void register(String part, String relic, Rarity rarity) {
+        List<Drop> relicDrops = drops.computeIfAbsent(relic, k -> new ArrayList<>());
+        relicDrops.removeIf(drop -> drop.part.equals(part));
+        relicDrops.add(new Drop(part, rarity));
+        relics.computeIfAbsent(part, k -> new LinkedHashSet<>()).add(relic);
+    }
+
+    /**
+     * Registers the relics of an item that are not known yet, such as items restored from a snapshot whose drop data was not read again.
+     * The rarity of those drops is inferred from the item's ducat value.
+     *
+     * @param item The item
+     */
+    public static synchronized void register(Item item) {
+        if (item.relics == null) return;
+        Set<String> known = relics.getOrDefault(item.name, Set.of());
+        for (String relic : item.relics) {
+            if (!known.contains(relic)) {
+                register(item.name, relic, Rarity.of(null, item.ducats));
+            }
+        }
+    }
+
+    /**
+     * @param relic The name of a relic, such as <code>Lith A1</code>
+     * @return The known drops of the relic
+     */
+    public static synchronized List<Drop> getDrops(String relic) {
+        return List.copyOf(drops.getOrDefault(relic, List.of()));
+    }
+
+    /**
+     * @param part The name of a prime part
+     * @return The relics that drop the part
+     */
+    public static synchronized Set<String> getRelics(String part) {
+        return Set.copyOf(relics.getOrDefault(part, Set.of()));
+    }
+}
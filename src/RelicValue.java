@@ -0,0 +1,53 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * The expected value of opening a relic on one platform at every refinement level. This is a row of the relic table.
+ */
+public class RelicValue {
+    public static final String[] COLUMN_NAMES = {"Relic", "Platform", "Intact", "Exceptional", "Flawless", "Radiant", "Ducats (Intact)",
+            "Ducats (Exceptional)", "Ducats (Flawless)", "Ducats (Radiant)"};
+
+    public final String relic;
+    public final Platform platform;
+    int location;
+    //expected platinum and ducats, by refinement level
+    double[] platinum = new double[RelicIndex.REFINEMENTS];
+    double[] ducats = new double[RelicIndex.REFINEMENTS];
+
+    public RelicValue(String relic, Platform platform) {
+        this.relic = relic;
+        this.platform = platform;
+    }
+
+    public static Class<?> getColumnClass(int columnIndex) {
+        return switch (columnIndex) {
+            case 0, 1 -> String.class;
+            case 2, 3, 4, 5, 6, 7, 8, 9 -> Double.class;
+            default -> Object.class;
+        };
+    }
+
+    public Object getValueAt(int columnIndex) {
+        return switch (columnIndex) {
+            default -> this;
+            case 0 -> relic;
+            case 1 -> platform.displayName;
+            case 2, 3, 4, 5 -> Math.round(platinum[columnIndex - 2] * 100) / 100d;
+            case 6, 7, 8, 9 -> Math.round(ducats[columnIndex - 6] * 100) / 100d;
+        };
+    }
+}
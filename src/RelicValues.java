@@ -0,0 +1,119 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import javax.swing.*;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Computes the expected platinum and ducat value of every relic at every refinement level. When a part is refreshed only the relics that
+ * drop it are recomputed, and their rows in the relic table are updated right away.
+ */
+public class RelicValues implements ItemUpdateListener {
+    private final SearchableTableModel<RelicValue> tableModel;
+    //the platinum and ducat value of every refreshed part, by key
+    private final HashMap<String, Double> partPrices = new HashMap<>();
+    private final HashMap<String, Integer> partDucats = new HashMap<>();
+    //the row of every relic, by relic and platform
+    private final HashMap<String, RelicValue> values = new HashMap<>();
+
+    public RelicValues(SearchableTableModel<RelicValue> tableModel) {
+        this.tableModel = tableModel;
+    }
+
+    @Override
+    public void itemUpdated(Item item) {
+        itemsUpdated(List.of(item));
+    }
+
+    @Override
+    public void itemsUpdated(List<Item> items) {
+        synchronized (this) {
+            Set<String> affected = new LinkedHashSet<>();
+            for (Item item : items) {
+                if (item.relics == null) continue;
+                RelicIndex.register(item);
+                partPrices.put(item.getKey(), getPrice(item));
+                partDucats.put(item.getKey(), Utils.notNull(item.ducats, 0));
+                for (String relic : RelicIndex.getRelics(item.name)) {
+                    affected.add(MarketAPI.cacheKey(relic, item.getPlatform()));
+                }
+            }
+            for (Item item : items) {
+                for (String relic : RelicIndex.getRelics(item.name)) {
+                    if (affected.remove(MarketAPI.cacheKey(relic, item.getPlatform()))) {
+                        recompute(relic, item.getPlatform());
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void itemRemoved(String key) {
+        partPrices.remove(key);
+        partDucats.remove(key);
+    }
+
+    private static double getPrice(Item item) {
+        if (item.sellPrice != null) return item.sellPrice;
+        return Utils.notNull(item.avg48h, 0d);
+    }
+
+    private void recompute(String relic, Platform platform) {
+        double[] platinum = new double[RelicIndex.REFINEMENTS];
+        double[] ducats = new double[RelicIndex.REFINEMENTS];
+        for (RelicIndex.Drop drop : RelicIndex.getDrops(relic)) {
+            String key = MarketAPI.cacheKey(drop.part(), platform);
+            double price = partPrices.getOrDefault(key, 0d);
+            int ducatValue = partDucats.getOrDefault(key, 0);
+            for (int level = 0; level < RelicIndex.REFINEMENTS; level++) {
+                double chance = drop.rarity().getChance(level);
+                platinum[level] += chance * price;
+                ducats[level] += chance * ducatValue;
+            }
+        }
+        String key = MarketAPI.cacheKey(relic, platform);
+        RelicValue value = values.get(key);
+        boolean added = value == null;
+        if (added) {
+            value = new RelicValue(relic, platform);
+            values.put(key, value);
+        }
+        final RelicValue row = value;
+        SwingUtilities.invokeLater(() -> {
+            row.platinum = platinum;
+            row.ducats = ducats;
+            if (added) {
+                row.location = tableModel.getRowCount();
+                tableModel.addRow(row);
+            } else {
+                tableModel.fireTableRowsUpdated(row.location, row.location);
+            }
+        });
+    }
+
+    /**
+     * @param relic    The name of a relic
+     * @param platform The platform
+     * @return The expected value of the relic, or null if none of its parts have been refreshed yet
+     */
+    public synchronized RelicValue getValue(String relic, Platform platform) {
+        return values.get(MarketAPI.cacheKey(relic, platform));
+    }
+}
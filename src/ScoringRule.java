@@ -0,0 +1,346 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A user defined score for items, such as <code>(avg48h - buyPrice) / buyPrice * min(orderCount, 50)</code>. The expression is parsed once
+ * into a tree of lambdas that reads the item's fields directly, so scoring an item does no parsing or lookups.
+ * <p>
+ * Expressions support numbers, the variables in {@link #VARIABLES}, <code>+ - * / %</code>, comparisons, <code>&amp;&amp; || !</code>,
+ * parentheses and the functions <code>min max abs sqrt log if(condition, then, else)</code>. Comparisons and logic give 1 for true and 0
+ * for false, and <code>trend</code> is 1, 0 or -1.
+ * <p>
+ * The functions in {@link #BOOK_FUNCTIONS} read the item's {@link OrderBook}, counting only online users, so rules can score the cost
+ * of trading more than one unit, for example <code>proceedsFromSelling(5) - costToBuy(5)</code>. A variable the item has no data for is NaN, which makes the score NaN unless it is only
+ * used in a condition.
+ */
+public class ScoringRule {
+    /**
+     * The item fields a rule can use
+     */
+    public static final Map<String, ToDoubleFunction<Item>> VARIABLES = Map.ofEntries(
+            Map.entry("buyPrice", item -> toDouble(item.buyPrice)),
+            Map.entry("sellPrice", item -> toDouble(item.sellPrice)),
+            Map.entry("profit", item -> toDouble(item.profit)),
+            Map.entry("avg48h", item -> toDouble(item.avg48h)),
+            Map.entry("avg90d", item -> toDouble(item.avg90d)),
+            Map.entry("deviation90d", item -> toDouble(item.deviation90d)),
+            Map.entry("orderCount", item -> toDouble(item.orderCount)),
+            Map.entry("ducats", item -> toDouble(item.ducats)),
+            Map.entry("ducatsPerPlat", Item::calculateDucatsPerPlat),
+            Map.entry("trend", ScoringRule::trend),
+            Map.entry("spread", item -> item.orderBook == null ? Double.NaN : item.orderBook.getSpread(true)));
+
+    private static final Map<String, DoubleUnaryOperator> FUNCTIONS_1 = Map.of("abs", Math::abs, "sqrt", Math::sqrt, "log", Math::log);
+    private static final Map<String, DoubleBinaryOperator> FUNCTIONS_2 = Map.of("min", Math::min, "max", Math::max);
+
+    /**
+     * Functions of an item's order book and one argument. NaN if the item has no book or not enough orders.
+     */
+    public static final Map<String, BookFunction> BOOK_FUNCTIONS = Map.of(
+            "costToBuy", (book, units) -> orNaN(book.costToBuy((int) units, true)),
+            "proceedsFromSelling", (book, units) -> orNaN(book.proceedsFromSelling((int) units, true)),
+            "askDepth", (book, fraction) -> book.getAskDepthWithin(fraction, true),
+            "bidDepth", (book, fraction) -> book.getBidDepthWithin(fraction, true));
+
+    @FunctionalInterface
+    public interface BookFunction {
+        double apply(OrderBook book, double argument);
+    }
+
+    private final String name;
+    private final String expression;
+    private final ToDoubleFunction<Item> compiled;
+
+    /**
+     * Compiles a rule
+     *
+     * @param name       The name of the rule, shown as its column header
+     * @param expression The expression
+     * @throws ParseException if the expression is not valid
+     */
+    public ScoringRule(String name, String expression) throws ParseException {
+        this.name = name;
+        this.expression = expression;
+        this.compiled = new Parser(expression).parse();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Scores an item
+     *
+     * @param item The item
+     * @return The score, or NaN if the item is missing data the rule needs
+     */
+    public double score(Item item) {
+        return compiled.applyAsDouble(item);
+    }
+
+    /**
+     * @return 1 for an increasing trend, -1 for a decreasing one and 0 otherwise
+     */
+    private static double trend(Item item) {
+        if (item.trendName == null) return Double.NaN;
+        return switch (item.trendName) {
+            case "Increasing" -> 1;
+            case "Decreasing" -> -1;
+            default -> 0;
+        };
+    }
+
+    private static double orNaN(long total) {
+        return total < 0 ? Double.NaN : total;
+    }
+
+    private static double toDouble(Number number) {
+        return number == null ? Double.NaN : number.doubleValue();
+    }
+
+    private static double toDouble(boolean value) {
+        return value ? 1 : 0;
+    }
+
+    /**
+     * Marks a compiled node whose value is known without an item, so operations on constants can be folded while parsing
+     */
+    private record Constant(double value) implements ToDoubleFunction<Item> {
+        @Override
+        public double applyAsDouble(Item item) {
+            return value;
+        }
+    }
+
+    /**
+     * Recursive descent parser that builds the lambda tree as it goes
+     */
+    private static class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        ToDoubleFunction<Item> parse() throws ParseException {
+            ToDoubleFunction<Item> result = or();
+            skipSpaces();
+            if (pos < text.length()) {
+                throw new ParseException("Unexpected '" + text.charAt(pos) + "'", pos);
+            }
+            return result;
+        }
+
+        private ToDoubleFunction<Item> or() throws ParseException {
+            ToDoubleFunction<Item> left = and();
+            while (accept("||")) {
+                ToDoubleFunction<Item> a = left, b = and();
+                left = fold(a, b, item -> toDouble(a.applyAsDouble(item) != 0 || b.applyAsDouble(item) != 0));
+            }
+            return left;
+        }
+
+        private ToDoubleFunction<Item> and() throws ParseException {
+            ToDoubleFunction<Item> left = comparison();
+            while (accept("&&")) {
+                ToDoubleFunction<Item> a = left, b = comparison();
+                left = fold(a, b, item -> toDouble(a.applyAsDouble(item) != 0 && b.applyAsDouble(item) != 0));
+            }
+            return left;
+        }
+
+        private ToDoubleFunction<Item> comparison() throws ParseException {
+            ToDoubleFunction<Item> a = sum();
+            //two character operators first so "<=" is not read as "<"
+            for (String op : new String[]{"<=", ">=", "==", "!=", "<", ">"}) {
+                if (accept(op)) {
+                    ToDoubleFunction<Item> b = sum();
+                    return fold(a, b, switch (op) {
+                        case "<=" -> item -> toDouble(a.applyAsDouble(item) <= b.applyAsDouble(item));
+                        case ">=" -> item -> toDouble(a.applyAsDouble(item) >= b.applyAsDouble(item));
+                        case "==" -> item -> toDouble(a.applyAsDouble(item) == b.applyAsDouble(item));
+                        case "!=" -> item -> toDouble(a.applyAsDouble(item) != b.applyAsDouble(item));
+                        case "<" -> item -> toDouble(a.applyAsDouble(item) < b.applyAsDouble(item));
+                        default -> item -> toDouble(a.applyAsDouble(item) > b.applyAsDouble(item));
+                    });
+                }
+            }
+            return a;
+        }
+
+        private ToDoubleFunction<Item> sum() throws ParseException {
+            ToDoubleFunction<Item> left = term();
+            while (true) {
+                ToDoubleFunction<Item> a = left;
+                if (accept("+")) {
+                    ToDoubleFunction<Item> b = term();
+                    left = fold(a, b, item -> a.applyAsDouble(item) + b.applyAsDouble(item));
+                } else if (accept("-")) {
+                    ToDoubleFunction<Item> b = term();
+                    left = fold(a, b, item -> a.applyAsDouble(item) - b.applyAsDouble(item));
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private ToDoubleFunction<Item> term() throws ParseException {
+            ToDoubleFunction<Item> left = unary();
+            while (true) {
+                ToDoubleFunction<Item> a = left;
+                if (accept("*")) {
+                    ToDoubleFunction<Item> b = unary();
+                    left = fold(a, b, item -> a.applyAsDouble(item) * b.applyAsDouble(item));
+                } else if (accept("/")) {
+                    ToDoubleFunction<Item> b = unary();
+                    left = fold(a, b, item -> a.applyAsDouble(item) / b.applyAsDouble(item));
+                } else if (accept("%")) {
+                    ToDoubleFunction<Item> b = unary();
+                    left = fold(a, b, item -> a.applyAsDouble(item) % b.applyAsDouble(item));
+                } else {
+                    return left;
+                }
+            }
+        }
+
+        private ToDoubleFunction<Item> unary() throws ParseException {
+            if (accept("-")) {
+                ToDoubleFunction<Item> a = unary();
+                return fold(a, a, item -> -a.applyAsDouble(item));
+            }
+            //"!=" is only valid after an operand, so a leading '!' is always a not
+            if (accept("!")) {
+                ToDoubleFunction<Item> a = unary();
+                return fold(a, a, item -> toDouble(a.applyAsDouble(item) == 0));
+            }
+            return primary();
+        }
+
+        private ToDoubleFunction<Item> primary() throws ParseException {
+            skipSpaces();
+            if (pos >= text.length()) {
+                throw new ParseException("Unexpected end of expression", pos);
+            }
+            char c = text.charAt(pos);
+            if (accept("(")) {
+                ToDoubleFunction<Item> inner = or();
+                expect(")");
+                return inner;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                int start = pos;
+                while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) pos++;
+                try {
+                    return new Constant(Double.parseDouble(text.substring(start, pos)));
+                } catch (NumberFormatException e) {
+                    throw new ParseException("Invalid number " + text.substring(start, pos), start);
+                }
+            }
+            if (Character.isLetter(c)) {
+                int start = pos;
+                while (pos < text.length() && Character.isLetterOrDigit(text.charAt(pos))) pos++;
+                String identifier = text.substring(start, pos);
+                if (accept("(")) {
+                    return function(identifier, start);
+                }
+                ToDoubleFunction<Item> variable = VARIABLES.get(identifier);
+                if (variable == null) {
+                    throw new ParseException("Unknown variable " + identifier, start);
+                }
+                return variable;
+            }
+            throw new ParseException("Unexpected '" + c + "'", pos);
+        }
+
+        private ToDoubleFunction<Item> function(String name, int start) throws ParseException {
+            List<ToDoubleFunction<Item>> args = new ArrayList<>();
+            if (!accept(")")) {
+                do {
+                    args.add(or());
+                } while (accept(","));
+                expect(")");
+            }
+            if (FUNCTIONS_1.containsKey(name) && args.size() == 1) {
+                DoubleUnaryOperator op = FUNCTIONS_1.get(name);
+                ToDoubleFunction<Item> a = args.get(0);
+                return fold(a, a, item -> op.applyAsDouble(a.applyAsDouble(item)));
+            }
+            if (FUNCTIONS_2.containsKey(name) && args.size() == 2) {
+                DoubleBinaryOperator op = FUNCTIONS_2.get(name);
+                ToDoubleFunction<Item> a = args.get(0), b = args.get(1);
+                return fold(a, b, item -> op.applyAsDouble(a.applyAsDouble(item), b.applyAsDouble(item)));
+            }
+            if (BOOK_FUNCTIONS.containsKey(name) && args.size() == 1) {
+                BookFunction function = BOOK_FUNCTIONS.get(name);
+                ToDoubleFunction<Item> a = args.get(0);
+                return item -> {
+                    OrderBook book = item.orderBook;
+                    return book == null ? Double.NaN : function.apply(book, a.applyAsDouble(item));
+                };
+            }
+            if (name.equals("if") && args.size() == 3) {
+                ToDoubleFunction<Item> condition = args.get(0), then = args.get(1), otherwise = args.get(2);
+                if (condition instanceof Constant constant) {
+                    return constant.value != 0 ? then : otherwise;
+                }
+                return item -> condition.applyAsDouble(item) != 0 ? then.applyAsDouble(item) : otherwise.applyAsDouble(item);
+            }
+            throw new ParseException("Unknown function " + name + " with " + args.size() + " arguments", start);
+        }
+
+        /**
+         * Evaluates an operation right away if its operands are constants
+         */
+        private static ToDoubleFunction<Item> fold(ToDoubleFunction<Item> a, ToDoubleFunction<Item> b, ToDoubleFunction<Item> operation) {
+            if (a instanceof Constant && b instanceof Constant) {
+                return new Constant(operation.applyAsDouble(null));
+            }
+            return operation;
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+
+        private boolean accept(String token) {
+            skipSpaces();
+            if (text.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) throws ParseException {
+            if (!accept(token)) {
+                throw new ParseException("Expected '" + token + "'", pos);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The scoring rules shown as extra columns in the item table. Every item is scored in one batch when the table is filled, then each item is
+ * scored again whenever it is refreshed. An item's scores are kept in {@link Item#scores}, in the same order as the rules.
+ * <p>
+ * Rules are read from a file with one rule per line, written as <code>name = expression</code>. Blank lines and lines starting with
+ * <code>#</code> are ignored.
+ */
+public class ScoringRules implements ItemUpdateListener {
+    private final List<ScoringRule> rules;
+
+    public ScoringRules(List<ScoringRule> rules) {
+        this.rules = List.copyOf(rules);
+    }
+
+    /**
+     * Reads rules from a file. Rules that do not compile are reported and left out.
+     *
+     * @param file The file. If it does not exist there are no rules.
+     * @return The rules in the file
+     */
+    public static ScoringRules load(File file) {
+        List<ScoringRule> rules = new ArrayList<>();
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String line;
+                int number = 0;
+                while ((line = reader.readLine()) != null) {
+                    number++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    int equals = line.indexOf('=');
+                    if (equals <= 0) {
+                        System.err.println(file + ":" + number + ": expected name = expression");
+                        continue;
+                    }
+                    String name = line.substring(0, equals).trim();
+                    String expression = line.substring(equals + 1).trim();
+                    try {
+                        rules.add(new ScoringRule(name, expression));
+                    } catch (ParseException e) {
+                        System.err.println(file + ":" + number + ": " + e.getMessage() + " at column " + (e.getErrorOffset() + 1) + " of " + expression);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return new ScoringRules(rules);
+    }
+
+    public List<ScoringRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return The column header of every rule
+     */
+    public String[] getColumnNames() {
+        return rules.stream().map(ScoringRule::getName).toArray(String[]::new);
+    }
+
+    /**
+     * Scores every item. The items are split across threads, and each thread runs every rule over its items.
+     *
+     * @param items The items
+     */
+    public void scoreAll(List<Item> items) {
+        if (rules.isEmpty()) return;
+        IntStream.range(0, items.size()).parallel().forEach(i -> score(items.get(i)));
+    }
+
+    /**
+     * Scores one item
+     *
+     * @param item The item
+     */
+    public void score(Item item) {
+        double[] scores = new double[rules.size()];
+        for (int r = 0; r < scores.length; r++) {
+            scores[r] = rules.get(r).score(item);
+        }
+        //replaced rather than filled in so the table never sees a half scored item
+        item.scores = scores;
+    }
+
+    @Override
+    public void itemUpdated(Item item) {
+        if (!rules.isEmpty()) {
+            score(item);
+        }
+    }
+}
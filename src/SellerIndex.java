@@ -0,0 +1,196 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Index from every seller to what they are selling, across every item in the table. It is kept up to date from the order book of each
+ * refreshed item, so it can answer questions such as which online sellers have several underpriced items from a wish list, without
+ * looking through every item's orders. Buying several items from one seller takes one whisper and one trade instead of several.
+ */
+public class SellerIndex implements ItemUpdateListener {
+    /**
+     * The cheapest sell order of a seller for an item
+     */
+    public record Listing(Item item, Structure.UserShort seller, int price, int quantity) {}
+
+    /**
+     * A seller with several of the wanted items
+     *
+     * @param seller   The seller
+     * @param listings The seller's listings of the wanted items, cheapest item first
+     * @param discount How much cheaper the listings are than the reference prices of their items, in total
+     */
+    public record Match(Structure.UserShort seller, List<Listing> listings, double discount) {}
+
+    //item key -> the cheapest listing of every seller of the item
+    private final HashMap<String, List<Listing>> byItem = new HashMap<>();
+    //seller -> item key -> their listing of the item
+    private final HashMap<Structure.UserShort, HashMap<String, Listing>> bySeller = new HashMap<>();
+
+    public SellerIndex() {
+        MemoryBudget.track("sellers", this::estimateSize);
+    }
+
+    /**
+     * Replaces the listings of a refreshed item with those in its new order book
+     */
+    @Override
+    public synchronized void itemUpdated(Item item) {
+        OrderBook book = item.orderBook;
+        if (book == null) return;
+        String key = item.getKey();
+        itemRemoved(key);
+        List<Listing> listings = new ArrayList<>();
+        for (int i = 0; i < book.getAskCount(); i++) {
+            Structure.UserShort seller = book.getAskUser(i);
+            HashMap<String, Listing> sellerListings = bySeller.computeIfAbsent(seller, k -> new HashMap<>());
+            //asks are cheapest first, so a seller's first order is their cheapest
+            if (sellerListings.containsKey(key)) continue;
+            Listing listing = new Listing(item, seller, book.getAskPrice(i), book.getAskQuantity(i));
+            sellerListings.put(key, listing);
+            listings.add(listing);
+        }
+        byItem.put(key, listings);
+    }
+
+    /**
+     * Drops the listings of an item
+     */
+    @Override
+    public synchronized void itemRemoved(String key) {
+        List<Listing> old = byItem.remove(key);
+        if (old == null) return;
+        for (Listing listing : old) {
+            HashMap<String, Listing> listings = bySeller.get(listing.seller);
+            if (listings != null) {
+                listings.remove(key);
+                if (listings.isEmpty()) bySeller.remove(listing.seller);
+            }
+        }
+    }
+
+    /**
+     * @return The estimated bytes held by the index. The items and sellers are counted where they are kept.
+     */
+    public synchronized long estimateSize() {
+        //every listing is in both maps, and each map of a seller's listings is a map with its table
+        long size = 0;
+        for (Map.Entry<String, List<Listing>> entry : byItem.entrySet()) {
+            size += MemoryBudget.entryOverhead() + MemoryBudget.sizeOf(entry.getKey()) + 24
+                    + MemoryBudget.sizeOfArray(entry.getValue().size(), 4) + 32L * entry.getValue().size();
+        }
+        for (HashMap<String, Listing> listings : bySeller.values()) {
+            size += MemoryBudget.entryOverhead() + 48 + MemoryBudget.sizeOfArray(Math.max(16, listings.size() * 2L), 4)
+                    + MemoryBudget.entryOverhead() * listings.size();
+        }
+        return size;
+    }
+
+    /**
+     * @param seller The name of a seller
+     * @return Everything the seller is selling, as of the last refresh of each item
+     */
+    public synchronized List<Listing> getListings(String seller) {
+        Structure.UserShort user = UserRegistry.get(seller);
+        HashMap<String, Listing> listings = user == null ? null : bySeller.get(user);
+        return listings == null ? List.of() : new ArrayList<>(listings.values());
+    }
+
+    /**
+     * @param item An item
+     * @return The cheapest listing of every seller of the item, cheapest first
+     */
+    public synchronized List<Listing> getSellers(Item item) {
+        return List.copyOf(byItem.getOrDefault(item.getKey(), List.of()));
+    }
+
+    /**
+     * @param filter Which items to include
+     * @return The listings of every seller of the items, by seller
+     */
+    public synchronized Map<Structure.UserShort, List<Listing>> getListingsBySeller(Predicate<Item> filter) {
+        Map<Structure.UserShort, List<Listing>> grouped = new HashMap<>();
+        for (List<Listing> listings : byItem.values()) {
+            //every listing in the list is of the same item
+            if (listings.isEmpty() || !filter.test(listings.get(0).item)) continue;
+            for (Listing listing : listings) {
+                grouped.computeIfAbsent(listing.seller, k -> new ArrayList<>()).add(listing);
+            }
+        }
+        return grouped;
+    }
+
+    /**
+     * @return How many sellers have at least one listing
+     */
+    public synchronized int getSellerCount() {
+        return bySeller.size();
+    }
+
+    /**
+     * Finds sellers that have several wanted items for less than they are usually worth. Only the listings of the wanted items are looked
+     * at.
+     *
+     * @param wanted     The wanted items
+     * @param discount   How far under its reference price a listing has to be, such as 0.1 for at least 10% cheaper. The reference price
+     *                   is the 48 hour average, or the median sell order if there is no average
+     * @param minItems   How many wanted items a seller must have
+     * @param onlineOnly Whether to only include sellers who are online now
+     * @return The matching sellers, the ones with the most wanted items first
+     */
+    public synchronized List<Match> findSellers(Collection<Item> wanted, double discount, int minItems, boolean onlineOnly) {
+        Map<Structure.UserShort, List<Listing>> found = new HashMap<>();
+        Map<Structure.UserShort, Double> saved = new HashMap<>();
+        for (Item item : wanted) {
+            List<Listing> listings = byItem.get(item.getKey());
+            double reference = getReferencePrice(item);
+            if (listings == null || Double.isNaN(reference)) continue;
+            double limit = reference * (1 - discount);
+            for (Listing listing : listings) {
+                //cheapest first, so nothing after the first listing over the limit can be under it
+                if (listing.price > limit) break;
+                if (onlineOnly && !listing.seller.online) continue;
+                found.computeIfAbsent(listing.seller, k -> new ArrayList<>()).add(listing);
+                saved.merge(listing.seller, reference - listing.price, Double::sum);
+            }
+        }
+        List<Match> matches = new ArrayList<>();
+        for (Map.Entry<Structure.UserShort, List<Listing>> entry : found.entrySet()) {
+            if (entry.getValue().size() < minItems) continue;
+            List<Listing> listings = entry.getValue();
+            listings.sort(Comparator.comparingInt(Listing::price));
+            matches.add(new Match(entry.getKey(), listings, saved.get(entry.getKey())));
+        }
+        matches.sort(Comparator.<Match>comparingInt(match -> match.listings.size()).thenComparingDouble(Match::discount).reversed());
+        return matches;
+    }
+
+    /**
+     * @return What an item is usually worth, or NaN if that is not known yet
+     */
+    static double getReferencePrice(Item item) {
+        if (item.avg48h != null && item.avg48h > 0) return item.avg48h;
+        QuantileSketch sketch = item.sellSketch;
+        return sketch == null || sketch.isEmpty() ? Double.NaN : sketch.getQuantile(0.5);
+    }
+}
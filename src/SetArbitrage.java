@@ -0,0 +1,127 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Compares the price of every set with the combined price of its parts. Only the sets affected by a refreshed item are recomputed.
+ */
+public class SetArbitrage implements ItemUpdateListener {
+    /**
+     * The comparison of one set on one platform
+     *
+     * @param set           The name of the set
+     * @param platform      The platform the prices are from
+     * @param setPrice      The lowest sell order of the set
+     * @param partsPrice    The combined lowest sell orders of the parts, times the quantity of each the set needs
+     * @param missingParts  How many parts have no sell orders. The parts price only covers the parts that do.
+     */
+    public record Result(String set, Platform platform, int setPrice, int partsPrice, int missingParts) {
+        /**
+         * @return How much is made by buying the parts and selling them as a set. Negative if buying the set and selling the parts is better.
+         */
+        public int getDifference() {
+            return setPrice - partsPrice;
+        }
+
+        public boolean isComplete() {
+            return missingParts == 0 && setPrice > 0;
+        }
+    }
+
+    //the latest refreshed version of every item, by key
+    private final HashMap<String, Item> latest = new HashMap<>();
+    private final HashMap<String, Result> results = new HashMap<>();
+    private final List<Consumer<Result>> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(Consumer<Result> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void itemUpdated(Item item) {
+        itemsUpdated(List.of(item));
+    }
+
+    /**
+     * Records the new prices of every item in a batch before recomputing the affected sets, so a set refreshed together with its parts is
+     * only compared once every price in the batch is in.
+     */
+    @Override
+    public void itemsUpdated(List<Item> items) {
+        LinkedHashMap<String, Result> changed = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Item item : items) {
+                latest.put(item.getKey(), item);
+            }
+            for (Item item : items) {
+                for (String set : ItemSets.getAffectedSets(item.name)) {
+                    String key = MarketAPI.cacheKey(set, item.getPlatform());
+                    if (!changed.containsKey(key)) {
+                        changed.put(key, compute(set, item.getPlatform()));
+                    }
+                }
+            }
+            results.putAll(changed);
+        }
+        for (Result result : changed.values()) {
+            for (Consumer<Result> listener : listeners) {
+                listener.accept(result);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void itemRemoved(String key) {
+        latest.remove(key);
+        results.remove(key);
+    }
+
+    private Result compute(String set, Platform platform) {
+        Item setItem = latest.get(MarketAPI.cacheKey(set, platform));
+        int setPrice = setItem == null ? 0 : Utils.notNull(setItem.sellPrice, 0);
+        int partsPrice = 0;
+        int missing = 0;
+        for (Map.Entry<String, Integer> part : ItemSets.getParts(set).entrySet()) {
+            Item partItem = latest.get(MarketAPI.cacheKey(part.getKey(), platform));
+            if (partItem == null || partItem.sellPrice == null) {
+                missing++;
+            } else {
+                partsPrice += partItem.sellPrice * part.getValue();
+            }
+        }
+        return new Result(set, platform, setPrice, partsPrice, missing);
+    }
+
+    /**
+     * @param set      The name of the set
+     * @param platform The platform
+     * @return The latest comparison for the set, or null if none of it has been refreshed yet
+     */
+    public synchronized Result getResult(String set, Platform platform) {
+        return results.get(MarketAPI.cacheKey(set, platform));
+    }
+
+    public synchronized List<Result> getResults() {
+        return new ArrayList<>(results.values());
+    }
+}
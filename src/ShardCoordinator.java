@@ -0,0 +1,310 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Splits the catalogue between several {@link ShardWorker}s, each scanning its share from its own machine so the per-IP rate limit is not
+ * shared, and merges what they send back into one live view.
+ * <p>
+ * Workers connect over a plain socket and every message is one line of JSON. A worker says <code>hello</code> with its id, then sends
+ * <code>heartbeat</code>s and an <code>item</code> for every refreshed item, in the form of {@link MarketExporter#toJson(Item)}. The
+ * coordinator sends each worker an <code>assign</code> message with every item it should scan whenever that changes.
+ * <p>
+ * Items are split with rendezvous hashing: every item goes to the worker with the highest hash of the worker's id and the item's name. When a
+ * worker joins or leaves, only the items it gains or loses move, and every other worker keeps its share.
+ * <p>
+ * Usage: <code>coordinator [--port n] [--bind address] [--platform pc]</code>. Only the loopback address is listened on unless
+ * <code>--bind</code> is given, such as <code>--bind 0.0.0.0</code> for workers on other machines. There is no authentication, so only bind
+ * to a network the workers are trusted on.
+ */
+public class ShardCoordinator implements AutoCloseable {
+    public static final int DEFAULT_PORT = 47300;
+    //a worker that has not been heard from for this long is treated as dead and its items are given to the others
+    static final long TIMEOUT_MILLIS = 15_000;
+
+    private final ServerSocket server;
+    private final List<String> items;
+    private final Platform platform;
+    private final Map<String, Connection> workers = new ConcurrentHashMap<>();
+    //item key -> the latest result from any worker
+    private final Map<String, Item> view = new ConcurrentHashMap<>();
+    private final List<Consumer<Item>> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Shard monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed;
+
+    private final class Connection {
+        final String id;
+        final Socket socket;
+        final Writer out;
+        volatile long lastSeen = System.currentTimeMillis();
+
+        Connection(String id, Socket socket, Writer out) {
+            this.id = id;
+            this.socket = socket;
+            this.out = out;
+        }
+
+        synchronized void send(JSONObject message) throws IOException {
+            out.write(message.toString());
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    /**
+     * Starts listening for workers on the loopback address
+     *
+     * @param port     The port to listen on
+     * @param items    The names of the items to split between the workers
+     * @param platform The platform the workers scan
+     * @throws IOException if the port cannot be opened
+     */
+    public ShardCoordinator(int port, Collection<String> items, Platform platform) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, items, platform);
+    }
+
+    /**
+     * Starts listening for workers
+     *
+     * @param bind     The address to listen on
+     * @param port     The port to listen on
+     * @param items    The names of the items to split between the workers
+     * @param platform The platform the workers scan
+     * @throws IOException if the port cannot be opened
+     */
+    public ShardCoordinator(InetAddress bind, int port, Collection<String> items, Platform platform) throws IOException {
+        this.server = new ServerSocket(port, 50, bind);
+        this.items = List.copyOf(items);
+        this.platform = platform;
+    }
+
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        String bind = null;
+        Platform platform = Platform.PC;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--bind" -> bind = args[++i];
+                case "--platform" -> platform = Platform.fromId(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        MarketAPI.loadItems();
+        try {
+            InetAddress address = bind == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+            ShardCoordinator coordinator = new ShardCoordinator(address, port, MarketAPI.itemNames, platform);
+            coordinator.start();
+            System.out.println("Coordinating " + MarketAPI.itemNames.size() + " items on " + address.getHostAddress() + ":"
+                    + coordinator.getPort());
+            while (true) {
+                Thread.sleep(10_000);
+                System.out.println(coordinator.getView().size() + " items scanned by " + coordinator.getWorkerCount() + " workers");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    public void start() {
+        Thread acceptor = new Thread(this::accept, "Shard coordinator");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        monitor.scheduleWithFixedDelay(this::dropSilentWorkers, TIMEOUT_MILLIS / 3, TIMEOUT_MILLIS / 3, TimeUnit.MILLISECONDS);
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    /**
+     * @return The latest result of every item that has been scanned, by key
+     */
+    public Map<String, Item> getView() {
+        return view;
+    }
+
+    /**
+     * Adds a listener that is told about every result as it arrives. Listeners are called on the thread reading from the worker.
+     */
+    public void addListener(Consumer<Item> listener) {
+        listeners.add(listener);
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                Thread reader = new Thread(() -> serve(socket), "Shard connection " + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) e.printStackTrace();
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Connection connection = null;
+        try (socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                JSONObject message = new JSONObject(line);
+                if (connection != null) {
+                    connection.lastSeen = System.currentTimeMillis();
+                }
+                switch (message.getString("type")) {
+                    case "hello" -> {
+                        connection = new Connection(message.getString("worker"), socket, out);
+                        Connection previous = workers.put(connection.id, connection);
+                        if (previous != null) previous.socket.close();
+                        System.out.println("Worker " + connection.id + " joined");
+                        rebalance();
+                    }
+                    case "item" -> {
+                        Item item = MarketExporter.fromJson(message.getJSONObject("item"));
+                        view.put(item.getKey(), item);
+                        for (Consumer<Item> listener : listeners) {
+                            listener.accept(item);
+                        }
+                    }
+                    case "heartbeat" -> {}
+                    default -> System.err.println("Unknown message from worker: " + line);
+                }
+            }
+        } catch (Exception e) {
+            if (!closed) System.err.println("Lost a worker: " + e);
+        } finally {
+            //a worker that reconnected has already replaced this connection
+            if (connection != null && workers.remove(connection.id, connection)) {
+                System.out.println("Worker " + connection.id + " left");
+                rebalance();
+            }
+        }
+    }
+
+    private void dropSilentWorkers() {
+        long now = System.currentTimeMillis();
+        for (Connection connection : workers.values()) {
+            if (now - connection.lastSeen > TIMEOUT_MILLIS) {
+                try {
+                    //closing the socket ends its reader, which removes the worker and rebalances
+                    connection.socket.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives every worker its share of the items
+     */
+    private synchronized void rebalance() {
+        Map<String, List<String>> shards = assign(items, workers.keySet());
+        for (Connection connection : workers.values()) {
+            List<String> shard = shards.getOrDefault(connection.id, List.of());
+            JSONObject message = new JSONObject();
+            message.put("type", "assign");
+            message.put("platform", platform.id);
+            message.put("items", new JSONArray(shard));
+            try {
+                connection.send(message);
+            } catch (IOException e) {
+                System.err.println("Could not assign items to worker " + connection.id + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Splits items between workers with rendezvous hashing
+     *
+     * @param items   The names of the items
+     * @param workers The ids of the workers
+     * @return The items of every worker, by id
+     */
+    static Map<String, List<String>> assign(Collection<String> items, Collection<String> workers) {
+        Map<String, List<String>> shards = new HashMap<>();
+        if (workers.isEmpty()) return shards;
+        List<String> ids = new ArrayList<>(workers);
+        for (String item : items) {
+            String best = null;
+            long bestScore = 0;
+            for (String id : ids) {
+                long score = score(id, item);
+                if (best == null || score > bestScore) {
+                    best = id;
+                    bestScore = score;
+                }
+            }
+            shards.computeIfAbsent(best, k -> new ArrayList<>()).add(item);
+        }
+        return shards;
+    }
+
+    private static long score(String worker, String item) {
+        //the finalizer of SplitMix64, so similar ids and names give unrelated scores
+        long h = ((long) worker.hashCode() << 32) ^ (item.hashCode() & 0xFFFFFFFFL);
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        monitor.shutdownNow();
+        server.close();
+        for (Connection connection : workers.values()) {
+            connection.socket.close();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans the share of the catalogue a {@link ShardCoordinator} assigns to it, over and over, and sends every refreshed item back. If the
+ * connection is lost, the worker keeps trying to reconnect, and starts again with whatever it is assigned then.
+ * <p>
+ * Usage: <code>worker [--host localhost] [--port n] [--id name]</code>
+ */
+public class ShardWorker implements AutoCloseable {
+    private final String host;
+    private final int port;
+    private final String id;
+    //the items this worker scans, replaced as a whole by every assignment
+    private volatile List<String> assigned = List.of();
+    private volatile Platform platform = Platform.PC;
+    private volatile Connection connection;
+    private volatile boolean closed;
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Shard heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //the items this worker has scanned, kept so their order price sketches build up over scans
+    private final HashMap<String, Item> scanned = new HashMap<>();
+
+    private record Connection(Socket socket, Writer out) {
+        synchronized void send(JSONObject message) throws IOException {
+            out.write(message.toString());
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    public ShardWorker(String host, int port, String id) {
+        this.host = host;
+        this.port = port;
+        this.id = id;
+    }
+
+    public static void main(String[] args) {
+        String host = "localhost";
+        int port = ShardCoordinator.DEFAULT_PORT;
+        String id = "worker-" + ProcessHandle.current().pid();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host" -> host = args[++i];
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--id" -> id = args[++i];
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        MarketAPI.loadItems();
+        MetadataCache.load();
+        ShardWorker worker = new ShardWorker(host, port, id);
+        worker.start();
+        worker.scan();
+    }
+
+    /**
+     * Connects to the coordinator in the background, reconnecting whenever the connection is lost
+     */
+    public void start() {
+        Thread reader = new Thread(this::connectLoop, "Shard worker " + id);
+        reader.setDaemon(true);
+        reader.start();
+        heartbeat.scheduleWithFixedDelay(() -> send(new JSONObject().put("type", "heartbeat")),
+                ShardCoordinator.TIMEOUT_MILLIS / 5, ShardCoordinator.TIMEOUT_MILLIS / 5, TimeUnit.MILLISECONDS);
+    }
+
+    private void connectLoop() {
+        long delay = 1000;
+        while (!closed) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), 5000);
+                Connection current = new Connection(socket, new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
+                current.send(new JSONObject().put("type", "hello").put("worker", id));
+                connection = current;
+                delay = 1000;
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                String line;
+                while ((line = in.readLine()) != null) {
+                    JSONObject message = new JSONObject(line);
+                    if (message.getString("type").equals("assign")) {
+                        JSONArray items = message.getJSONArray("items");
+                        List<String> names = new ArrayList<>(items.length());
+                        for (int i = 0; i < items.length(); i++) {
+                            names.add(items.getString(i));
+                        }
+                        platform = Platform.fromId(message.getString("platform"));
+                        assigned = names;
+                        System.out.println("Assigned " + names.size() + " items");
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) System.err.println("Lost the coordinator: " + e);
+            }
+            connection = null;
+            //keep scanning nothing until a coordinator hands out items again
+            assigned = List.of();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+            delay = Math.min(delay * 2, 30_000);
+        }
+    }
+
+    /**
+     * Refreshes the assigned items one after another until the worker is closed. A new assignment takes effect with the next item.
+     */
+    public void scan() {
+        int next = 0;
+        while (!closed) {
+            List<String> items = assigned;
+            if (items.isEmpty()) {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            String name = items.get(next++ % items.size());
+            Platform platform = this.platform;
+            try {
+                Item item = scanned.getOrDefault(MarketAPI.cacheKey(name, platform), new Item(name, null, platform, 0));
+                item = DelayedThreadQueue.refresh(item);
+                scanned.put(item.getKey(), item);
+                //statistics are read again on the next pass, like the order book
+                MarketAPI.uncache(name, platform);
+                send(new JSONObject().put("type", "item").put("item", MarketExporter.toJson(item)));
+            } catch (CircuitBreaker.OpenException e) {
+                System.err.println(e.getMessage());
+                try {
+                    Thread.sleep(e.retryAfterMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to refresh " + name + ": " + e);
+            }
+        }
+    }
+
+    private void send(JSONObject message) {
+        Connection current = connection;
+        if (current == null) return;
+        try {
+            current.send(message);
+        } catch (IOException e) {
+            //the reader notices the broken connection and reconnects
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        heartbeat.shutdownNow();
+        Connection current = connection;
+        if (current != null) current.socket.close();
+    }
+}
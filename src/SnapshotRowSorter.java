@@ -0,0 +1,252 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Row sorter that filters and sorts on a background thread. Every change to the model or the sort order takes a snapshot of the rows,
+ * filters and sorts it off the event dispatch thread, and swaps the finished view into the table in one step. A newer request makes any
+ * older computation still in progress give up.
+ * <p>
+ * Updated rows are only sorted again once every {@link #UPDATE_DELAY} milliseconds, however many are updated in between, since refreshed
+ * items arrive many times a second and each sort reads every row.
+ *
+ * @param <T> The type of the rows
+ */
+public class SnapshotRowSorter<T> extends RowSorter<SearchableTableModel<T>> {
+    private static final int MAX_SORT_KEYS = 3;
+    /**
+     * How long after a row is updated the rows are sorted again, in milliseconds. Rows updated in the meantime are sorted with it.
+     */
+    public static final long UPDATE_DELAY = 250;
+    private final SearchableTableModel<T> model;
+    private final BiFunction<T, Integer, Object> valueAt;
+    private final Predicate<T> filter;
+    private final ExecutorService executor;
+    private final AtomicLong generation = new AtomicLong();
+    private final Debouncer updates = new Debouncer("Table sorter updates", UPDATE_DELAY);
+    //set from the first update until the sort it waits for starts, so later updates join that sort instead of pushing it back
+    private final AtomicBoolean updatePending = new AtomicBoolean();
+    private List<SortKey> sortKeys = List.of();
+    //the view currently shown. Only touched on the event dispatch thread
+    private int[] viewToModel = new int[0];
+    private int[] modelToView = new int[0];
+
+    /**
+     * Constructor
+     * @param model   The model to sort
+     * @param valueAt Reads a column of a row. This is called off the event dispatch thread.
+     * @param filter  Decides which rows are shown. This is called off the event dispatch thread.
+     */
+    public SnapshotRowSorter(SearchableTableModel<T> model, BiFunction<T, Integer, Object> valueAt, Predicate<T> filter) {
+        this.model = model;
+        this.valueAt = valueAt;
+        this.filter = filter;
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Table sorter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        resetToModel();
+    }
+
+    @Override
+    public SearchableTableModel<T> getModel() {
+        return model;
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+        List<SortKey> keys = new ArrayList<>(sortKeys);
+        SortOrder order = SortOrder.ASCENDING;
+        if (!keys.isEmpty() && keys.get(0).getColumn() == column) {
+            order = keys.get(0).getSortOrder() == SortOrder.ASCENDING ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+        }
+        keys.removeIf(key -> key.getColumn() == column);
+        keys.add(0, new SortKey(column, order));
+        setSortKeys(keys);
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        return viewToModel[index];
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        return index < modelToView.length ? modelToView[index] : -1;
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        sortKeys = keys == null ? List.of() : List.copyOf(keys.subList(0, Math.min(MAX_SORT_KEYS, keys.size())));
+        fireSortOrderChanged();
+        refresh();
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return viewToModel.length;
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        resetToModel();
+        refresh();
+    }
+
+    @Override
+    public void allRowsChanged() {
+        modelChanged();
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        modelChanged();
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        modelChanged();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        rowsUpdated();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        rowsUpdated();
+    }
+
+    private void rowsUpdated() {
+        if (updatePending.compareAndSet(false, true)) {
+            updates.trigger(() -> SwingUtilities.invokeLater(() -> {
+                updatePending.set(false);
+                refresh();
+            }));
+        }
+    }
+
+    private void modelChanged() {
+        //the old view may point past the end of the model, so show the rows as they are until the new view is ready
+        if (modelToView.length != model.getRowCount()) {
+            resetToModel();
+        }
+        refresh();
+    }
+
+    private void resetToModel() {
+        int[] old = viewToModel;
+        viewToModel = IntStream.range(0, model.getRowCount()).toArray();
+        modelToView = viewToModel.clone();
+        fireRowSorterChanged(old);
+    }
+
+    /**
+     * Filters and sorts the rows again in the background. Must be called on the event dispatch thread.
+     */
+    public void refresh() {
+        final long current = generation.incrementAndGet();
+        final Object[] rows = model.getDataVector().toArray();
+        final List<SortKey> keys = sortKeys;
+        executor.execute(() -> {
+            if (generation.get() != current) return;
+            int[] view = compute(rows, keys, current);
+            if (view == null) return;
+            SwingUtilities.invokeLater(() -> swap(view, rows.length, current));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private int[] compute(Object[] rows, List<SortKey> keys, long current) {
+        int[] visible = IntStream.range(0, rows.length).parallel().filter(i -> filter.test((T) rows[i])).toArray();
+        if (generation.get() != current) return null;
+        if (keys.isEmpty()) return visible;
+        //read every sort column once so the comparator works on values that cannot change under it
+        Object[][] values = new Object[keys.size()][rows.length];
+        for (int k = 0; k < keys.size(); k++) {
+            int column = keys.get(k).getColumn();
+            Object[] columnValues = values[k];
+            IntStream.of(visible).parallel().forEach(i -> columnValues[i] = valueAt.apply((T) rows[i], column));
+        }
+        if (generation.get() != current) return null;
+        Comparator<Integer> comparator = (a, b) -> {
+            for (int k = 0; k < keys.size(); k++) {
+                SortOrder order = keys.get(k).getSortOrder();
+                if (order == SortOrder.UNSORTED) continue;
+                int result = compareValues(values[k][a], values[k][b]);
+                if (result != 0) return order == SortOrder.DESCENDING ? -result : result;
+            }
+            return Integer.compare(a, b);
+        };
+        Integer[] boxed = IntStream.of(visible).boxed().toArray(Integer[]::new);
+        Arrays.parallelSort(boxed, comparator);
+        return Arrays.stream(boxed).mapToInt(Integer::intValue).toArray();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object a, Object b) {
+        if (a == b) return 0;
+        if (a == null) return -1;
+        if (b == null) return 1;
+        if (a instanceof Comparable && a.getClass() == b.getClass()) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private void swap(int[] view, int snapshotRows, long current) {
+        //a newer view is on its way, or the model changed size since the snapshot was taken
+        if (generation.get() != current || snapshotRows != model.getRowCount()) return;
+        int[] old = viewToModel;
+        int[] inverse = new int[snapshotRows];
+        Arrays.fill(inverse, -1);
+        for (int i = 0; i < view.length; i++) {
+            inverse[view[i]] = i;
+        }
+        viewToModel = view;
+        modelToView = inverse;
+        fireRowSorterChanged(old);
+    }
+
+    public void shutdown() {
+        updates.shutdown();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A trading strategy that can be replayed by the {@link Backtester}. Strategies are shared between threads, so they must not keep state
+ * between calls.
+ */
+public interface Strategy {
+    /**
+     * @param snapshot The market of an item at one point in time
+     * @return Whether to buy one of the item from the lowest sell order
+     */
+    boolean shouldBuy(Backtester.Snapshot snapshot);
+
+    /**
+     * @param snapshot The market of a held item at one point in time
+     * @param paid     What the held item was bought for
+     * @param held     How long the item has been held, in milliseconds
+     * @return Whether to sell the item to the highest buy order
+     */
+    boolean shouldSell(Backtester.Snapshot snapshot, int paid, long held);
+
+    /**
+     * @return A short description of the strategy and its parameters
+     */
+    String describe();
+}
@@ -49,7 +49,7 @@ public class Structure {
             this.price = json.getInt("platinum");
             this.quantity = json.getInt("quantity");
             this.selling = json.getString("order_type").equals("sell");
-            this.user = new UserShort(json.getJSONObject("user"));
+            this.user = UserRegistry.intern(json.getJSONObject("user"));
             this.visible = json.getBoolean("visible");
             this.level = getLevel(json);
         }
@@ -64,6 +64,7 @@ public class Structure {
         boolean online;
         public UserShort(String name, boolean online, int reputation){
             this.name = name;
+            this.online = online;
             this.reputation = reputation;
         }
         public UserShort(JSONObject json){
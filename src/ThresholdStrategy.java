@@ -0,0 +1,91 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The "Profitable?" rule from the table with its thresholds as parameters: buy when the profit and the number of orders are high enough and,
+ * optionally, the trend is increasing. Held items are sold once they can be sold for a target profit, or after a maximum holding time.
+ */
+public class ThresholdStrategy implements Strategy {
+    private final int minProfit;
+    private final int minOrders;
+    private final boolean requireUptrend;
+    private final int takeProfit;
+    private final long maxHold;
+
+    /**
+     * Constructor
+     * @param minProfit      The profit needed to buy
+     * @param minOrders      The number of orders needed to buy
+     * @param requireUptrend Whether the trend must be increasing to buy
+     * @param takeProfit     How much above the buying price a buy order must be to sell to it
+     * @param maxHoldHours   How many hours an item is held before it is sold regardless of price
+     */
+    public ThresholdStrategy(int minProfit, int minOrders, boolean requireUptrend, int takeProfit, int maxHoldHours) {
+        this.minProfit = minProfit;
+        this.minOrders = minOrders;
+        this.requireUptrend = requireUptrend;
+        this.takeProfit = takeProfit;
+        this.maxHold = TimeUnit.HOURS.toMillis(maxHoldHours);
+    }
+
+    /**
+     * @return The rule the table uses, <code>profit &gt; 3 &amp;&amp; orders &gt; 30 &amp;&amp; trend == increasing</code>, selling at any
+     * profit within a day
+     */
+    public static ThresholdStrategy current() {
+        return new ThresholdStrategy(3, 30, true, 1, 24);
+    }
+
+    /**
+     * @return Every combination of a range of parameters around the current rule
+     */
+    public static List<Strategy> grid() {
+        List<Strategy> strategies = new ArrayList<>();
+        for (int minProfit : new int[]{1, 3, 5, 10}) {
+            for (int minOrders : new int[]{10, 30, 60}) {
+                for (boolean uptrend : new boolean[]{true, false}) {
+                    for (int takeProfit : new int[]{1, 3, 5, 10}) {
+                        for (int maxHold : new int[]{12, 24, 72, 168}) {
+                            strategies.add(new ThresholdStrategy(minProfit, minOrders, uptrend, takeProfit, maxHold));
+                        }
+                    }
+                }
+            }
+        }
+        return strategies;
+    }
+
+    @Override
+    public boolean shouldBuy(Backtester.Snapshot snapshot) {
+        return snapshot.profit() != null && snapshot.profit() > minProfit && snapshot.orderCount() > minOrders
+                && (!requireUptrend || "Increasing".equals(snapshot.trend()));
+    }
+
+    @Override
+    public boolean shouldSell(Backtester.Snapshot snapshot, int paid, long held) {
+        return snapshot.buyPrice() != null && snapshot.buyPrice() >= paid + takeProfit || held >= maxHold;
+    }
+
+    @Override
+    public String describe() {
+        return "profit>" + minProfit + " orders>" + minOrders + (requireUptrend ? " uptrend" : "") + " take+" + takeProfit + " hold<="
+                + TimeUnit.MILLISECONDS.toHours(maxHold) + "h";
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Shows alerts as desktop notifications from an icon in the system tray
+ */
+public class TrayAlertSink implements AlertSink {
+    private final TrayIcon icon;
+
+    /**
+     * Adds the tray icon
+     * @throws AWTException if the system tray is not supported or the icon cannot be added
+     */
+    public TrayAlertSink() throws AWTException {
+        if (!SystemTray.isSupported()) {
+            throw new AWTException("The system tray is not supported");
+        }
+        icon = new TrayIcon(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB), "Warframe Market");
+        icon.setImageAutoSize(true);
+        SystemTray.getSystemTray().add(icon);
+    }
+
+    @Override
+    public void alert(AlertEngine.Alert alert) {
+        icon.displayMessage(alert.rule().getItemName(), AlertSink.describe(alert), TrayIcon.MessageType.INFO);
+    }
+
+    @Override
+    public void close() {
+        SystemTray.getSystemTray().remove(icon);
+    }
+}
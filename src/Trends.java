@@ -34,13 +34,7 @@ public class Trends {
      * @return The mean of the numbers
      */
     public static double mean(ArrayList<Double> doubles) {
-        if(doubles.size() == 0)
-            return 0;
-        double sum = 0;
-        for(Double d : doubles){
-            sum += d;
-        }
-        return sum/doubles.size();
+        return Statistics.mean(Statistics.toArray(doubles));
     }
 
     /**
@@ -83,25 +77,13 @@ public class Trends {
             return a + "x + " + b;
         }
     }
+    /**
+     * Fits a straight line to a series of prices by least squares, with each price's index as its x coordinate
+     * @param points The prices, oldest first
+     * @return The line
+     * @see Statistics#linearRegression(double[])
+     */
     public static LinearTrend getLinearTrend(ArrayList<Double> points){
-        int n = points.size();
-        //calculate A
-        double xy = 0;
-        double x = 0;
-        double y = 0;
-        double x2 = 0;
-        for(int i = 0; i < points.size(); i++){
-            xy += points.get(i) * i;
-            x += points.get(i);
-            y += i;
-            x2 += points.get(i)*points.get(i);
-        }
-        double xSum2 = x * x;
-
-        double a = (n*xy-x*y)/(n*x2-xSum2);
-
-        //calculate B
-        double b = y - a*x/n;
-        return new LinearTrend(a, b);
+        return Statistics.linearRegression(Statistics.toArray(points));
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every user seen in an order, one object per user. Orders of the same user on different items share the same {@link Structure.UserShort},
+ * whose status and reputation are those of the last order seen.
+ */
+public class UserRegistry {
+    private static final Map<String, Structure.UserShort> users = new ConcurrentHashMap<>();
+    //off for scans that never look users up again, such as an export, so sellers do not pile up for the length of the scan
+    private static volatile boolean enabled = true;
+    static {
+        MemoryBudget.track("users", UserRegistry::estimateSize);
+    }
+
+    /**
+     * Gets the one object for the user of an order, updating its status and reputation
+     *
+     * @param json The user of an order
+     * @return The user
+     */
+    public static Structure.UserShort intern(JSONObject json) {
+        String name = json.getString("ingame_name");
+        boolean online = json.optString("status").equals("ingame");
+        int reputation = json.optInt("reputation");
+        if (!enabled) {
+            return new Structure.UserShort(name, online, reputation);
+        }
+        Structure.UserShort user = users.computeIfAbsent(name, k -> new Structure.UserShort(name, online, reputation));
+        user.online = online;
+        user.reputation = reputation;
+        return user;
+    }
+
+    /**
+     * Turns keeping users on or off. While it is off, {@link #intern(JSONObject)} gives every order its own user and keeps none, and the
+     * users already kept are dropped.
+     *
+     * @param enabled Whether to keep users
+     */
+    public static void setEnabled(boolean enabled) {
+        UserRegistry.enabled = enabled;
+        if (!enabled) {
+            users.clear();
+        }
+    }
+
+    /**
+     * @return The user with a name, or null if they have not been seen
+     */
+    public static Structure.UserShort get(String name) {
+        return users.get(name);
+    }
+
+    /**
+     * @return The estimated bytes held by every user
+     */
+    public static long estimateSize() {
+        long size = 0;
+        for (String name : users.keySet()) {
+            //the name is shared by the key and the user
+            size += MemoryBudget.entryOverhead() + MemoryBudget.sizeOf(name) + 24;
+        }
+        return size;
+    }
+
+    public static int size() {
+        return users.size();
+    }
+}
@@ -14,7 +14,17 @@
  * limitations under the License.
  */
 
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 public class Utils {
     public static String arrayToString(Object[] array){
@@ -67,4 +77,32 @@ public class Utils {
     public static <T> T notNull(T obj, T def){
         return obj == null ? def : obj;
     }
+
+    /**
+     * Writes a gzipped, serialized object to a file without ever leaving the file half written. The object is written to a temporary file
+     * that is synced to disk and then atomically renamed over the old file.
+     * @param file The file to write
+     * @param object The object to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeObjectAtomically(File file, Object object) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel));
+            ObjectOutputStream oos = new ObjectOutputStream(gzip);
+            oos.writeObject(object);
+            oos.flush();
+            gzip.finish();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        //make the rename itself durable. Not every platform can open a directory, in which case the rename is left to the OS
+        try (FileChannel directory = FileChannel.open(target.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ignored) {
+        }
+    }
 }
@@ -14,14 +14,44 @@
  * limitations under the License.
  */
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class WarframeMarket {
 
     /**
      * Program entry point
-     * @param args
+     * @param args The platforms to scan, such as <code>pc ps4</code>. Only PC is scanned if none are given. If the first argument is
+     *             <code>export</code>, <code>backtest</code>, <code>coordinator</code> or <code>worker</code>, the rest are passed to
+     *             {@link MarketExporter}, {@link Backtester}, {@link ShardCoordinator} or {@link ShardWorker} instead and no window is
+     *             opened.
      */
     public static void main(String[] args){
-        Application app = new Application();
+        if (args.length > 0 && args[0].equals("export")) {
+            MarketExporter.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("backtest")) {
+            Backtester.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("coordinator")) {
+            ShardCoordinator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("worker")) {
+            ShardWorker.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        List<Platform> platforms = new ArrayList<>();
+        for (String arg : args) {
+            platforms.add(Platform.fromId(arg));
+        }
+        if (platforms.isEmpty()) {
+            platforms.add(Platform.PC);
+        }
+        Application app = new Application(platforms);
         app.start();
     }
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2022 Daniel Allen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Posts alerts as JSON to a webhook on this machine, for scripts that want to act on them. The body is the item in the same form as
+ * {@link MarketExporter} writes it, plus the rule that fired.
+ */
+public class WebhookAlertSink implements AlertSink {
+    /**
+     * What a line of the rules file starts with to add a webhook
+     */
+    public static final String PREFIX = "webhook:";
+
+    private final URL url;
+
+    /**
+     * Constructor
+     * @param url The webhook. It must be on this machine, since alerts are not meant to leave it.
+     * @throws IOException if the host is not this machine
+     */
+    public WebhookAlertSink(URL url) throws IOException {
+        if (!InetAddress.getByName(url.getHost()).isLoopbackAddress()) {
+            throw new IOException("Webhooks must be on this machine: " + url);
+        }
+        this.url = url;
+    }
+
+    /**
+     * Reads the webhooks in a rules file, one per line as <code>webhook: url</code>. Webhooks that are not valid are reported and left out.
+     *
+     * @param file The rules file. If it does not exist there are no webhooks.
+     * @return A sink for every webhook in the file
+     * @see AlertRule#load(File)
+     */
+    public static List<WebhookAlertSink> load(File file) {
+        List<WebhookAlertSink> sinks = new ArrayList<>();
+        if (!file.exists()) return sinks;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (!line.startsWith(PREFIX)) continue;
+                try {
+                    sinks.add(new WebhookAlertSink(new URL(line.substring(PREFIX.length()).trim())));
+                } catch (IOException e) {
+                    System.err.println(file + ":" + number + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return sinks;
+    }
+
+    @Override
+    public void alert(AlertEngine.Alert alert) throws IOException {
+        JSONObject body = MarketExporter.toJson(alert.item());
+        body.put("rule", alert.rule().toString());
+        body.put("time", alert.time());
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setConnectTimeout(2000);
+        connection.setReadTimeout(2000);
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(bytes);
+        }
+        int code = connection.getResponseCode();
+        connection.disconnect();
+        if (code >= 400) {
+            throw new IOException("Webhook " + url + " returned " + code);
+        }
+    }
+}